@@ -0,0 +1,51 @@
+package com.alba.reader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Loading a comic: listing the pages, reading the metadata and updating the library. The warm benchmarks reuse
+// the pooled archive session like reopening a comic does, the cold one opens the archive every time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveLoadBenchmark {
+
+    @Param({"20", "200", "1000"})
+    public int pages;
+
+    private File cbz;
+    private File nhl;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cbz = Fixtures.cbz(pages, 1200, 1800);
+        nhl = Fixtures.nhl(Math.min(pages, 200), 600, 900);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ArchiveSessionPool.closeAll();
+    }
+
+    @Benchmark
+    public ComicBook loadCbz() throws IOException {
+        return ComicBookZip.load(cbz);
+    }
+
+    @Benchmark
+    public ComicBook loadCbzCold() throws IOException {
+        ArchiveSessionPool.closeAll();
+        return ComicBookZip.load(cbz);
+    }
+
+    @Benchmark
+    public ComicBook loadNhl() throws IOException {
+        return ComicBookNhl.load(nhl);
+    }
+}
@@ -0,0 +1,90 @@
+package com.alba.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Compares inflating every page of a CBZ in parallel through one shared ZipFile (the old loading path)
+// with CbzReader. Run with: <file.cbz> [threads] [rounds]
+public class CbzReaderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: CbzReaderBenchmark <file.cbz> [threads] [rounds]");
+            return;
+        }
+        File file = new File(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                long zipFileTime = time(() -> pool.submit(() -> inflateWithZipFile(file)).get());
+                long cbzReaderTime = time(() -> pool.submit(() -> inflateWithCbzReader(file)).get());
+                System.out.println("Round " + (round + 1) + " (" + threads + " threads): ZipFile " + zipFileTime
+                        + " ms, CbzReader " + cbzReaderTime + " ms");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long inflateWithZipFile(File file) {
+        try (ZipFile zip = new ZipFile(file)) {
+            List<? extends ZipEntry> entries = Collections.list(zip.entries());
+            return entries.parallelStream()
+                    .filter(entry -> !entry.isDirectory())
+                    .mapToLong(entry -> {
+                        try (InputStream is = zip.getInputStream(entry)) {
+                            return drain(is);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long inflateWithCbzReader(File file) {
+        try (CbzReader reader = new CbzReader(file)) {
+            return reader.getEntries().parallelStream()
+                    .mapToLong(entry -> {
+                        try (InputStream is = reader.open(entry)) {
+                            return drain(is);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long drain(InputStream is) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static long time(Task task) throws Exception {
+        long start = System.nanoTime();
+        task.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,48 @@
+package com.alba.reader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Detecting the format of a comic, ZIP files are also checked for a GIF to tell NHL comics from CBZ
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileTypeDetectorBenchmark {
+
+    private File cbz;
+    private File nhl;
+    private File cbr;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cbz = Fixtures.cbz(200, 600, 900);
+        nhl = Fixtures.nhl(20, 300, 450);
+        cbr = Fixtures.rarSignature();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ArchiveSessionPool.closeAll();
+    }
+
+    @Benchmark
+    public ComicFormat detectCbz() {
+        return FileTypeDetector.detect(cbz);
+    }
+
+    @Benchmark
+    public ComicFormat detectNhl() {
+        return FileTypeDetector.detect(nhl);
+    }
+
+    @Benchmark
+    public ComicFormat detectCbr() {
+        return FileTypeDetector.detect(cbr);
+    }
+}
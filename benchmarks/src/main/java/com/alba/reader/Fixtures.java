@@ -0,0 +1,225 @@
+package com.alba.reader;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Generated comics for the benchmarks. Everything is written to a temporary directory, which is also used as the
+// app data directory so the benchmarks never touch the real library.
+final class Fixtures {
+
+    static final Path ROOT;
+
+    static {
+        try {
+            ROOT = Files.createTempDirectory("alba-benchmarks");
+            Path appData = Files.createDirectories(ROOT.resolve("appdata"));
+            Files.createDirectories(appData.resolve("Alba/ComicReader"));
+            // Must be set before LocalAppDataUtil is loaded
+            System.setProperty("alba.appData", appData.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    static Path appData() {
+        return ROOT.resolve("appdata");
+    }
+
+    // A page with shapes and noise, so it compresses about as well as a scanned page
+    static BufferedImage page(int width, int height, int seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height, new Color(random.nextInt())));
+        g.fillRect(0, 0, width, height);
+        for (int i = 0; i < 40; i++) {
+            g.setColor(new Color(random.nextInt()));
+            g.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width / 3 + 1), random.nextInt(height / 3 + 1));
+        }
+        g.dispose();
+        for (int i = 0; i < width * height / 20; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+        }
+        return image;
+    }
+
+    // A CBZ with JPEG pages and a ComicInfo.xml, made once per size
+    static File cbz(int pages, int width, int height) throws IOException {
+        File file = ROOT.resolve("comic-" + pages + "-" + width + "x" + height + ".cbz").toFile();
+        if (file.exists()) {
+            return file;
+        }
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            zip.putNextEntry(new ZipEntry("ComicInfo.xml"));
+            zip.write(("""
+                    <?xml version="1.0" encoding="utf-8"?>
+                    <ComicInfo xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                      <Title>Benchmark</Title>
+                      <Series>Fixtures</Series>
+                      <Number>1</Number>
+                      <Year>2024</Year>
+                      <Writer>Alba</Writer>
+                      <PageCount>%d</PageCount>
+                    </ComicInfo>
+                    """.formatted(pages)).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            // Generating every page is slow, a few different pages are repeated
+            byte[][] images = new byte[Math.min(pages, 8)][];
+            for (int i = 0; i < images.length; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(page(width, height, i), "jpg", out);
+                images[i] = out.toByteArray();
+            }
+            for (int i = 0; i < pages; i++) {
+                zip.putNextEntry(new ZipEntry(String.format("%04d.jpg", i)));
+                zip.write(images[i % images.length]);
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    // An NHL comic, a ZIP with every page as a frame of one animated GIF and a JSON metadata file
+    static File nhl(int pages, int width, int height) throws IOException {
+        File file = ROOT.resolve("comic-" + pages + "-" + width + "x" + height + ".nhlcomic").toFile();
+        if (file.exists()) {
+            return file;
+        }
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(gif)) {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+            BufferedImage[] frames = new BufferedImage[Math.min(pages, 8)];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = page(width, height, i);
+            }
+            for (int i = 0; i < pages; i++) {
+                writer.writeToSequence(new IIOImage(frames[i % frames.length], null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            zip.putNextEntry(new ZipEntry("metadata.json"));
+            zip.write("{\"Title\": \"Benchmark\", \"Series\": \"Fixtures\"}".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("comic.gif"));
+            zip.write(gif.toByteArray());
+            zip.closeEntry();
+        }
+        return file;
+    }
+
+    // A CBR with JPEG pages and a ComicInfo.xml, made once per size. Java has no RAR writer, so the archive is
+    // written by hand in the RAR 4 format with every file stored as is, which junrar reads like any other RAR
+    static File cbr(int pages, int width, int height) throws IOException {
+        File file = ROOT.resolve("comic-" + pages + "-" + width + "x" + height + ".cbr").toFile();
+        if (file.exists()) {
+            return file;
+        }
+        byte[][] images = new byte[Math.min(pages, 8)][];
+        for (int i = 0; i < images.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(page(width, height, i), "jpg", out);
+            images[i] = out.toByteArray();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.write(new byte[]{'R', 'a', 'r', '!', 0x1A, 0x07, 0x00}); // Marker block
+            writeRarBlock(out, 0x73, 0, new byte[6]); // Archive header, not solid
+            writeRarFile(out, "ComicInfo.xml", """
+                    <?xml version="1.0" encoding="utf-8"?>
+                    <ComicInfo xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                      <Title>Benchmark</Title>
+                      <Series>Fixtures</Series>
+                      <PageCount>%d</PageCount>
+                    </ComicInfo>
+                    """.formatted(pages).getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < pages; i++) {
+                writeRarFile(out, String.format("%04d.jpg", i), images[i % images.length]);
+            }
+            writeRarBlock(out, 0x7B, 0, new byte[0]); // End of archive
+        }
+        return file;
+    }
+
+    private static void writeRarFile(DataOutputStream out, String name, byte[] data) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(header);
+        fields.writeInt(Integer.reverseBytes(data.length)); // Packed size
+        fields.writeInt(Integer.reverseBytes(data.length)); // Unpacked size
+        fields.writeByte(2); // Made on Windows
+        fields.writeInt(Integer.reverseBytes((int) crc.getValue()));
+        fields.writeInt(Integer.reverseBytes(0x58210000)); // 2024-01-01 in DOS time
+        fields.writeByte(29); // Version needed to extract
+        fields.writeByte(0x30); // Stored
+        fields.writeShort(Short.reverseBytes((short) nameBytes.length));
+        fields.writeInt(Integer.reverseBytes(0x20)); // Archive attribute
+        fields.write(nameBytes);
+        writeRarBlock(out, 0x74, 0x8000, header.toByteArray()); // The data follows the header
+        out.write(data);
+    }
+
+    // A block is its CRC, type, flags and size followed by the fields of the type. The CRC is the low half of the
+    // CRC-32 of everything after it
+    private static void writeRarBlock(DataOutputStream out, int type, int flags, byte[] fields) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(block);
+        header.writeByte(type);
+        header.writeShort(Short.reverseBytes((short) flags));
+        header.writeShort(Short.reverseBytes((short) (7 + fields.length)));
+        header.write(fields);
+        CRC32 crc = new CRC32();
+        crc.update(block.toByteArray());
+        out.writeShort(Short.reverseBytes((short) crc.getValue()));
+        out.write(block.toByteArray());
+    }
+
+    // Only the RAR signature, enough for format detection but not for loading
+    static File rarSignature() throws IOException {
+        File file = ROOT.resolve("signature.cbr").toFile();
+        if (!file.exists()) {
+            Files.write(file.toPath(), new byte[]{'R', 'a', 'r', '!', 0x1A, 0x07, 0x01, 0x00, 0, 0, 0, 0});
+        }
+        return file;
+    }
+
+    // A ComicList.json with the given number of comics, imported by the library store when it starts
+    static void comicList(int comics) throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < comics; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"comic-").append(i).append(".cbz\":{")
+                    .append("\"metadata\":{\"ComicInfo\":{\"Title\":\"Title ").append(i).append("\",\"Series\":\"Series ").append(i % 100).append("\"}},")
+                    .append("\"metadataEdited\":false,\"read\":false,\"currentPage\":0,")
+                    .append("\"lastOpened\":").append(1_700_000_000L + i).append(',')
+                    .append("\"path\":\"/comics/comic-").append(i).append(".cbz\",")
+                    .append("\"favorite\":false,\"annotations\":{}}");
+        }
+        json.append('}');
+        Files.writeString(appData().resolve("Alba/ComicReader/ComicList.json"), json);
+    }
+}
@@ -0,0 +1,60 @@
+package com.alba.reader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// Scaling pages: the old getScaledInstance resize, the bilinear scale used for display and the zoom rescale
+// of the reader, which scales from the nearest level of the page pyramid
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageScalingBenchmark {
+
+    @Param({"1200x1800", "2400x3600"})
+    public String size;
+
+    @Param({"0.3", "0.75"})
+    public float zoom;
+
+    private BufferedImage page;
+    private PagePyramid pyramid;
+    private int width;
+    private int height;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        String[] dimensions = size.split("x");
+        page = Fixtures.page(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 1);
+        width = Math.max(1, (int) (page.getWidth() * zoom));
+        height = Math.max(1, (int) (page.getHeight() * zoom));
+
+        // Build every level before measuring, like a page that has been shown for a moment
+        pyramid = new PagePyramid(page);
+        int levels = 0;
+        while (levels != pyramid.getLevelCount()) {
+            levels = pyramid.getLevelCount();
+            pyramid.getLevel(1);
+            Thread.sleep(200);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage resizeImage() {
+        return ImageTools.resizeImage(page, width, height);
+    }
+
+    @Benchmark
+    public BufferedImage scaleImage() {
+        return ImageTools.scaleImage(page, width, height);
+    }
+
+    @Benchmark
+    public BufferedImage zoomRescale() {
+        return ImageTools.scaleImage(pyramid.getLevel(width), width, height);
+    }
+}
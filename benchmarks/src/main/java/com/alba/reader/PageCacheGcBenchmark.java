@@ -0,0 +1,65 @@
+package com.alba.reader;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+// Pages through a generated book with the page cache on the heap and off the heap and prints the time spent
+// in garbage collection for both. Run with: [pages] [width] [height] [cacheMB]
+public class PageCacheGcBenchmark {
+
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1600;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 2400;
+        long cacheBytes = (args.length > 3 ? Long.parseLong(args[3]) : 1024) * 1024 * 1024;
+
+        for (boolean offHeap : new boolean[]{false, true, false, true}) {
+            System.gc();
+            long[] before = gcStats();
+            long start = System.nanoTime();
+            PageCache cache = new PageCache(cacheBytes, offHeap);
+            pageThrough(cache, pages, width, height);
+            long time = (System.nanoTime() - start) / 1_000_000;
+            long[] after = gcStats();
+            System.out.println((offHeap ? "Off-heap" : "Heap    ") + ": " + time + " ms, " + (after[0] - before[0])
+                    + " collections, " + (after[1] - before[1]) + " ms in GC, " + cache);
+            cache.clear();
+        }
+    }
+
+    // Forward through the book, then back again the way a reader flips pages
+    private static void pageThrough(PageCache cache, int pages, int width, int height) {
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < pages; i++) {
+                int index = pass == 0 ? i : pages - 1 - i;
+                PageCache.Key key = new PageCache.Key("benchmark", index, 1);
+                BufferedImage image = cache.get(key);
+                if (image == null) {
+                    image = createPage(index, width, height);
+                    cache.put(key, image);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createPage(int index, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(new Color(index * 2654435761L > 0 ? (int) (index * 2654435761L) : index));
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+
+    private static long[] gcStats() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+}
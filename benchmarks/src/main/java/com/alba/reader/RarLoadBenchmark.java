@@ -0,0 +1,37 @@
+package com.alba.reader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Loading a CBR. Without a file a generated comic is used, a real comic (like a solid archive) can be passed instead:
+// java -jar benchmarks.jar RarLoadBenchmark -p cbr=/path/to/comic.cbr
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RarLoadBenchmark {
+
+    @Param({""})
+    public String cbr;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Fixtures.appData(); // Use the benchmark app data directory
+        file = cbr.isEmpty() ? Fixtures.cbr(200, 1200, 1800) : new File(cbr);
+        if (!file.isFile()) {
+            throw new IllegalStateException("Not a file: " + cbr);
+        }
+    }
+
+    @Benchmark
+    public ComicBook loadCbr() throws IOException {
+        return ComicBookRar.load(file);
+    }
+}
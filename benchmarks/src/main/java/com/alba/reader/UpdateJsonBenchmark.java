@@ -0,0 +1,38 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Recording that a comic was opened in libraries of different sizes. Every size runs in its own JVM, so the
+// library store starts from a freshly imported ComicList.json each time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateJsonBenchmark {
+
+    @Param({"1000", "20000"})
+    public int comics;
+
+    private final ComicListManager comicListManager = new ComicListManager();
+    private final JSONObject metadata = new JSONObject();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Fixtures.comicList(comics);
+        LibraryStore.getInstance();
+        MetadataIndex.getInstance();
+    }
+
+    @Benchmark
+    public void updateJSON() throws IOException {
+        int comic = next++ % comics;
+        comicListManager.updateJSON("comic-" + comic + ".cbz", metadata, "/comics/comic-" + comic + ".cbz");
+    }
+}
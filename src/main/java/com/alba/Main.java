@@ -1,10 +1,15 @@
 package com.alba;
 
+import com.alba.reader.BatchCli;
 import com.alba.reader.ComicReader;
 
 public class Main {
 
     public static void main(String[] args){
+        // With arguments run a batch command without the user interface
+        if (args.length > 0) {
+            System.exit(BatchCli.run(args));
+        }
         ComicReader.init();
     }
 }
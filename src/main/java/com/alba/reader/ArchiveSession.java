@@ -0,0 +1,230 @@
+package com.alba.reader;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+// An opened ZIP based comic, the central directory is only read once and shared by everyone reading the comic.
+// Sessions come from ArchiveSessionPool, closing a session hands it back to the pool instead of closing the file.
+// Every acquire gets its own session object sharing the opened archive, so closing it twice only releases it once.
+public class ArchiveSession implements Closeable {
+
+    public static final List<String> IMAGE_TYPES = List.of("jpg", "jpeg", "png", "gif");
+    // ZipFile reads the archives unless CbzReader is turned on with -Dalba.cbzReader=true. CbzReaderBenchmark
+    // didn't show it inflating pages any faster than a shared ZipFile, so it stays opt-in
+    private static final boolean USE_CBZ_READER = Boolean.getBoolean("alba.cbzReader");
+
+    private final File file;
+    private final CbzReader reader;
+    private final ZipFile zip;
+    private final List<ZipEntry> entries;
+    private final long lastModified;
+    // The session kept in the pool, it counts the users of the archive
+    private final ArchiveSession shared;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private int users;
+    private long lastUsed;
+
+    ArchiveSession(File file) throws IOException {
+        this.file = file;
+        this.shared = this;
+        this.lastModified = file.lastModified();
+        this.lastUsed = System.currentTimeMillis();
+
+        long startTime = System.nanoTime();
+        List<ZipEntry> list = new ArrayList<>();
+        CbzReader cbzReader = null;
+        if (USE_CBZ_READER) {
+            try {
+                cbzReader = new CbzReader(file);
+            } catch (ZipException e) {
+                // Files CbzReader can't handle (like ZIP64) are read with ZipFile
+            }
+        }
+        this.reader = cbzReader;
+        this.zip = reader == null ? new ZipFile(file) : null;
+        Metrics.time("archive.open", startTime);
+
+        long listStartTime = System.nanoTime();
+        if (reader != null) {
+            for (CbzReader.Entry cbzEntry : reader.getEntries()) {
+                ZipEntry entry = new ZipEntry(cbzEntry.name());
+                entry.setMethod(cbzEntry.method());
+                entry.setCrc(cbzEntry.crc());
+                entry.setCompressedSize(cbzEntry.compressedSize());
+                entry.setSize(cbzEntry.size());
+                list.add(entry);
+            }
+        } else {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (!entry.isDirectory()) {
+                    list.add(entry);
+                }
+            }
+        }
+        this.entries = Collections.unmodifiableList(list);
+        Metrics.time("archive.entries.list", listStartTime);
+        Metrics.counter("archive.entries").add(list.size());
+    }
+
+    private ArchiveSession(ArchiveSession shared) {
+        this.file = shared.file;
+        this.lastModified = shared.lastModified;
+        this.reader = shared.reader;
+        this.zip = shared.zip;
+        this.entries = shared.entries;
+        this.shared = shared;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<ZipEntry> getEntries() {
+        return entries;
+    }
+
+    public List<ZipEntry> getEntries(List<String> fileTypes) {
+        List<ZipEntry> matching = new ArrayList<>();
+        for (ZipEntry entry : entries) {
+            // Check if entry name matches any of the provided file types
+            if (fileTypes.stream().anyMatch(entry.getName()::endsWith)) {
+                matching.add(entry);
+            }
+        }
+        return matching;
+    }
+
+    public List<ZipEntry> getImageEntries() {
+        return getEntries(IMAGE_TYPES);
+    }
+
+    public int getPageCount() {
+        return getImageEntries().size();
+    }
+
+    // .nhlcomic files are ZIP files holding a GIF with all the pages
+    public boolean isNhl() {
+        return !getEntries(Collections.singletonList("gif")).isEmpty();
+    }
+
+    // The returned stream keeps the session in use until it is closed
+    public InputStream open(String entryName) throws IOException {
+        return open(new ZipEntry(entryName));
+    }
+
+    public InputStream open(ZipEntry entry) throws IOException {
+        // Only the bookkeeping is locked, the entry itself is opened and read without holding the pool lock
+        synchronized (ArchiveSessionPool.class) {
+            shared.users++;
+        }
+        long startTime = System.nanoTime();
+        InputStream inputStream;
+        try {
+            inputStream = openEntry(entry.getName());
+        } catch (IOException | RuntimeException e) {
+            ArchiveSessionPool.release(shared);
+            throw e;
+        }
+        return new FilterInputStream(inputStream) {
+            private boolean closed;
+            private long bytesRead;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesRead += n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                // The time an entry was open covers inflating it while it was read
+                Metrics.time("archive.entry.read", startTime);
+                Metrics.counter("archive.bytes.read").add(bytesRead);
+                try {
+                    super.close();
+                } finally {
+                    ArchiveSessionPool.release(shared);
+                }
+            }
+        };
+    }
+
+    private InputStream openEntry(String entryName) throws IOException {
+        if (reader != null) {
+            CbzReader.Entry entry = reader.getEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException("Entry not found: " + entryName);
+            }
+            return reader.open(entry);
+        }
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+            throw new FileNotFoundException("Entry not found: " + entryName);
+        }
+        return zip.getInputStream(entry);
+    }
+
+    // A file that changed on disk needs a new session
+    boolean isStale() {
+        return file.lastModified() != lastModified;
+    }
+
+    // A session for one more user of the archive, only called on the pooled session
+    ArchiveSession lease() {
+        return new ArchiveSession(this);
+    }
+
+    int getUsers() {
+        return users;
+    }
+
+    void acquired() {
+        users++;
+    }
+
+    void released() {
+        users--;
+        lastUsed = System.currentTimeMillis();
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void closeArchive() throws IOException {
+        if (reader != null) {
+            reader.close();
+        } else {
+            zip.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            ArchiveSessionPool.release(shared);
+        }
+    }
+}
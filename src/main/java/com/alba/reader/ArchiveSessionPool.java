@@ -0,0 +1,111 @@
+package com.alba.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps opened archives around so the library and the reader share them, archives nobody used for a while are closed
+public class ArchiveSessionPool {
+
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+    // Sessions by path, a session that is still being opened is shared by everyone acquiring the same file
+    private static final ConcurrentHashMap<String, CompletableFuture<ArchiveSession>> sessions = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService evictor;
+
+    private ArchiveSessionPool() {
+    }
+
+    // Every acquire has to be matched by closing the session. Archives are opened outside the pool lock, so opening
+    // a large archive only holds up the ones acquiring the same file
+    public static ArchiveSession acquire(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        while (true) {
+            CompletableFuture<ArchiveSession> future = sessions.get(key);
+            if (future == null) {
+                CompletableFuture<ArchiveSession> created = new CompletableFuture<>();
+                future = sessions.putIfAbsent(key, created);
+                if (future == null) {
+                    try {
+                        created.complete(new ArchiveSession(file));
+                    } catch (IOException | RuntimeException e) {
+                        sessions.remove(key, created);
+                        created.completeExceptionally(e);
+                        throw e;
+                    }
+                    startEvictor();
+                    future = created;
+                }
+            }
+
+            ArchiveSession session;
+            try {
+                session = future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw e;
+            }
+            synchronized (ArchiveSessionPool.class) {
+                if (sessions.get(key) != future) {
+                    continue; // Closed while waiting for it
+                }
+                if (session.isStale() && session.getUsers() == 0) {
+                    sessions.remove(key, future);
+                    closeArchive(session);
+                    continue;
+                }
+                session.acquired();
+                return session.lease();
+            }
+        }
+    }
+
+    static synchronized void release(ArchiveSession session) {
+        session.released();
+    }
+
+    public static synchronized void evictIdle(long idleTimeoutMs) {
+        long now = System.currentTimeMillis();
+        Iterator<CompletableFuture<ArchiveSession>> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            // Sessions that are still being opened are left alone
+            CompletableFuture<ArchiveSession> future = iterator.next();
+            ArchiveSession session = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+            if (session != null && session.getUsers() <= 0 && now - session.getLastUsed() >= idleTimeoutMs) {
+                iterator.remove();
+                closeArchive(session);
+            }
+        }
+    }
+
+    private static void closeArchive(ArchiveSession session) {
+        try {
+            session.closeArchive();
+        } catch (IOException e) {
+            System.err.println("Error closing archive: " + session.getFile().getName() + " - " + e.getMessage());
+        }
+    }
+
+    public static void closeAll() {
+        evictIdle(0);
+    }
+
+    private static synchronized void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "archive-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> evictIdle(IDLE_TIMEOUT_MS), IDLE_TIMEOUT_MS, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,237 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Command line mode for running the loaders without the user interface, for example on a server:
+//   scan   add the comics to the library with their metadata, page count and page sizes
+//   thumbs create the library thumbnails
+//   verify decode every page and report the comics with pages that can't be read
+//   stats  count the comics, pages and bytes per format without decoding anything
+// Archives are processed in parallel and the throughput is printed at the end.
+public class BatchCli {
+
+    private static final List<String> EXTENSIONS = List.of(".cbz", ".cbr", ".nhlcomic");
+
+    private final String command;
+    private final int workers;
+    private final List<File> comics;
+    private final AtomicInteger archives = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<ComicFormat, AtomicInteger> formats = new EnumMap<>(ComicFormat.class);
+
+    private BatchCli(String command, int workers, List<File> comics) {
+        this.command = command;
+        this.workers = workers;
+        this.comics = comics;
+        for (ComicFormat format : ComicFormat.values()) {
+            formats.put(format, new AtomicInteger());
+        }
+    }
+
+    // Run a command, returns the exit code
+    public static int run(String[] args) {
+        // Nothing in batch mode may open a window
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length == 0 || !List.of("scan", "thumbs", "verify", "stats").contains(args[0])) {
+            printUsage();
+            return 2;
+        }
+
+        int workers = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--workers") || args[i].equals("-w")) {
+                if (i + 1 >= args.length) {
+                    printUsage();
+                    return 2;
+                }
+                try {
+                    workers = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid worker count: " + args[i]);
+                    return 2;
+                }
+            } else {
+                paths.add(args[i]);
+            }
+        }
+
+        try {
+            List<File> comics = paths.isEmpty() ? findLibraryComics() : findComics(paths);
+            return new BatchCli(args[0], workers, comics).execute();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } finally {
+            ArchiveSessionPool.closeAll();
+        }
+    }
+
+    private int execute() {
+        System.out.println(command + ": " + comics.size() + " comics with " + workers + " workers");
+        long startTime = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(workers)) {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (File comic : comics) {
+                tasks.add(executor.submit(() -> process(comic)));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+        double megabytes = bytes.get() / (1024.0 * 1024.0);
+        if (command.equals("stats")) {
+            for (Map.Entry<ComicFormat, AtomicInteger> format : formats.entrySet()) {
+                if (format.getValue().get() > 0) {
+                    System.out.println(format.getKey() + ": " + format.getValue().get());
+                }
+            }
+        }
+        System.out.printf("%d archives, %d pages, %.1f MB in %.2f s%n", archives.get(), pages.get(), megabytes, seconds);
+        System.out.printf("%.1f archives/s, %.1f pages/s, %.1f MB/s%n", archives.get() / seconds, pages.get() / seconds, megabytes / seconds);
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " failed");
+            return 1;
+        }
+        return 0;
+    }
+
+    private void process(File file) {
+        try {
+            ComicFormat format = FileTypeDetector.detect(file);
+            formats.get(format).incrementAndGet();
+            if (format == ComicFormat.UNKNOWN) {
+                throw new IOException("Unsupported file format");
+            }
+
+            int pageCount = switch (command) {
+                case "scan" -> scan(file, format);
+                case "thumbs" -> thumbnail(file, format);
+                case "verify" -> verify(file, format);
+                default -> pageCount(file, format);
+            };
+            archives.incrementAndGet();
+            pages.addAndGet(pageCount);
+            bytes.addAndGet(file.length());
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            System.err.println("Failed: " + file.getAbsolutePath() + " - " + (e.getMessage() != null ? e.getMessage() : e));
+        }
+    }
+
+    private int scan(File file, ComicFormat format) throws IOException {
+        // Loading the comic adds it to the library with its metadata. The page headers of a ZIP based comic are read
+        // as well, a CBR only has the sizes of the pages that were spooled, see RarPageIndex
+        ComicBook comicBook = load(file, format);
+        Dimension[] sizes = format == ComicFormat.CBR ? RarPageIndex.get(file).getKnownPageSizes() : comicBook.getPageSizes();
+        new ComicListManager().updatePageInfo(file.getName(), file, comicBook.getPageCount(), sizes);
+        return comicBook.getPageCount();
+    }
+
+    private int thumbnail(File file, ComicFormat format) throws IOException {
+        if (ThumbnailCache.getThumbnail(file, ComicCellRenderer.IMAGE_WIDTH, ComicCellRenderer.IMAGE_HEIGHT) == null) {
+            throw new IOException("No readable first page");
+        }
+        return pageCount(file, format);
+    }
+
+    private int verify(File file, ComicFormat format) throws IOException {
+        ComicBook comicBook = load(file, format);
+        int broken = 0;
+        for (int i = 0; i < comicBook.getPageCount(); i++) {
+            if (comicBook.getPage(i).image() == null) {
+                broken++;
+            }
+        }
+        if (broken > 0) {
+            throw new IOException(broken + " of " + comicBook.getPageCount() + " pages can't be read");
+        }
+        return comicBook.getPageCount();
+    }
+
+    private static int pageCount(File file, ComicFormat format) throws IOException {
+        if (format == ComicFormat.CBR) {
+            return RarPageIndex.get(file).getPageCount();
+        }
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return session.getPageCount();
+        }
+    }
+
+    private static ComicBook load(File file, ComicFormat format) throws IOException {
+        return switch (format) {
+            case CBR -> ComicBookRar.load(file);
+            case NHL -> ComicBookNhl.load(file);
+            case CBZ -> ComicBookZip.load(file);
+            default -> throw new IOException("Unsupported file format");
+        };
+    }
+
+    // All comics in the given files and folders, folders are searched recursively
+    private static List<File> findComics(List<String> paths) throws IOException {
+        List<File> comics = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                try (Stream<Path> files = Files.walk(file.toPath())) {
+                    files.filter(Files::isRegularFile).filter(BatchCli::isComic).forEach(p -> comics.add(p.toFile()));
+                }
+            } else if (file.isFile()) {
+                comics.add(file);
+            } else {
+                throw new IOException("File or folder does not exist: " + path);
+            }
+        }
+        return comics;
+    }
+
+    // Without paths the commands run on the comics that are in the library
+    private static List<File> findLibraryComics() throws IOException {
+        List<File> comics = new ArrayList<>();
+        for (JSONObject comic : LibraryStore.getInstance().getAll().values()) {
+            comics.add(new File(comic.getString("path")));
+        }
+        return comics;
+    }
+
+    private static boolean isComic(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: <scan|thumbs|verify|stats> [--workers N] [files or folders...]");
+        System.err.println("Without files or folders the comics in the library are used.");
+    }
+}
@@ -0,0 +1,310 @@
+package com.alba.reader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+// ZIP reader built on positional reads of a FileChannel. Unlike ZipFile the streams do not share any lock,
+// so every thread can inflate its own page at the same time. Nothing of the file is mapped, so closing the reader
+// releases the file right away. Like ZipFile every entry is checked against its CRC-32 when it is read to the end.
+public class CbzReader implements Closeable {
+
+    private static final int END_HEADER = 0x06054b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 1;
+
+    public record Entry(String name, int method, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {
+
+        public boolean isEncrypted() {
+            return (flags & FLAG_ENCRYPTED) != 0;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    public CbzReader(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_HEADER_SIZE) {
+            throw new ZipException("Not a ZIP file: " + file.getName());
+        }
+
+        // The end header is at the end of the file, followed by a comment of at most 65535 bytes
+        int tailSize = (int) Math.min(fileSize, END_HEADER_SIZE + 0xFFFF);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(tail, fileSize - tailSize);
+        int end = -1;
+        for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_HEADER) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("Not a ZIP file: " + file.getName());
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 files are not supported: " + file.getName());
+        }
+
+        // The offsets are counted from the start of the ZIP data. When something is put in front of it, like the
+        // stub of a self-extracting archive, the directory ends up further away from the end header than it says
+        long directoryEnd = fileSize - tailSize + end;
+        long prefix = directoryEnd - directorySize - directoryOffset;
+        if (prefix < 0) {
+            throw new ZipException("Invalid central directory in: " + file.getName());
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(directory, prefix + directoryOffset);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + 46 > directorySize || directory.getInt(position) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory in: " + file.getName());
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = prefix + (directory.getInt(position + 42) & 0xFFFFFFFFL);
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) {
+                continue; // Skip directories
+            }
+            Entry entry = new Entry(name, method, flags, crc, compressedSize, size, localHeaderOffset);
+            entries.add(entry);
+            entriesByName.putIfAbsent(name, entry);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    public InputStream open(Entry entry) throws IOException {
+        if (entry.isEncrypted()) {
+            throw new ZipException("Encrypted entries are not supported: " + entry.name());
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, entry.localHeaderOffset());
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for entry: " + entry.name());
+        }
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        long dataOffset = entry.localHeaderOffset() + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        InputStream data = switch (entry.method()) {
+            case STORED -> new ChannelInputStream(channel, dataOffset, entry.size());
+            case DEFLATED -> new EntryInflaterInputStream(new ChannelInputStream(channel, dataOffset, entry.compressedSize()), entry.size());
+            default -> throw new ZipException("Unsupported compression method " + entry.method() + " for entry: " + entry.name());
+        };
+        return new CrcInputStream(data, entry);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of ZIP file: " + file.getName());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads a region of the channel with positional reads, the position of the channel itself is never touched
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+    // Checks the CRC-32 and the size of the entry once it has been read to the end
+    private static class CrcInputStream extends CheckedInputStream {
+        private final Entry entry;
+        private long count;
+        private boolean checked;
+
+        CrcInputStream(InputStream in, Entry entry) {
+            super(in, new CRC32());
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                check();
+            } else {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                check();
+            } else {
+                count += read;
+            }
+            return read;
+        }
+
+        // Skipped bytes have to be read to be counted in the CRC
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void check() throws IOException {
+            if (checked) {
+                return;
+            }
+            checked = true;
+            if (count != entry.size()) {
+                throw new ZipException("Invalid entry size (expected " + entry.size() + " but got " + count + " bytes): " + entry.name());
+            }
+            if (getChecksum().getValue() != entry.crc()) {
+                throw new ZipException("Invalid entry CRC (expected 0x" + Long.toHexString(entry.crc())
+                        + " but got 0x" + Long.toHexString(getChecksum().getValue()) + "): " + entry.name());
+            }
+        }
+    }
+
+    // Every stream has its own inflater so nothing is shared between threads
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private final long size;
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterInputStream(InputStream in, long size) {
+            super(in, new Inflater(true), 64 * 1024);
+            this.size = size;
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // A raw inflater may need an extra dummy byte at the end of the data
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed) {
+                return 0;
+            }
+            long remaining = size - inf.getBytesWritten();
+            return remaining > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(0, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                super.close();
+                inf.end();
+            }
+        }
+    }
+}
@@ -23,8 +23,11 @@ public class Comic {
         this.filePath = filePath;
     }
 
-    // Convert timestamp to date string
+    // Convert timestamp to date string, comics added by the library watcher were never opened
     private String convertTimestampToDate(long timestamp) {
+        if (timestamp <= 0) {
+            return "Never";
+        }
         Date date = new Date(timestamp * 1000); // Convert seconds to milliseconds
         SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         return formatter.format(date);
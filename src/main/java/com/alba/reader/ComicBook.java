@@ -1,6 +1,23 @@
 package com.alba.reader;
 
-public record ComicBook(String title, ComicPage[] pages) {
+import org.json.JSONObject;
+
+import java.awt.*;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The id tells comics apart in the page cache: two files with the same name in different folders, or a file that
+// was replaced, never share pages. The page sizes are read from the image headers once and kept with the book.
+// The metadata is what the archive holds, loading a book doesn't add it to the library by itself
+public record ComicBook(String id, String title, ComicPage[] pages, AtomicReferenceArray<Dimension> sizes, JSONObject metadata) {
+
+    public ComicBook(File file, ComicPage[] pages, JSONObject metadata) {
+        this(id(file), file.getName(), pages, new AtomicReferenceArray<>(pages.length), metadata);
+    }
+
+    public static String id(File file) {
+        return file.getAbsolutePath() + "-" + file.length() + "-" + file.lastModified();
+    }
 
     public int getPageCount() {
         return pages.length;
@@ -12,4 +29,32 @@ public record ComicBook(String title, ComicPage[] pages) {
         }
         return pages[index];
     }
+
+    // The size of the full page, only the first call reads the image header
+    public Dimension getPageSize(int index) {
+        Dimension size = sizes.get(index);
+        if (size == null) {
+            size = getPage(index).getSize();
+            sizes.compareAndSet(index, null, size);
+        }
+        return new Dimension(size);
+    }
+
+    // The size of every page, the headers that weren't read yet are read now
+    public Dimension[] getPageSizes() {
+        Dimension[] pageSizes = new Dimension[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            pageSizes[i] = getPageSize(i);
+        }
+        return pageSizes;
+    }
+
+    // Sizes that are already known, for example from the library, so the headers don't have to be read
+    public void setPageSize(int index, Dimension size) {
+        sizes.compareAndSet(index, null, new Dimension(size));
+    }
+
+    public boolean hasPageSize(int index) {
+        return sizes.get(index) != null;
+    }
 }
@@ -2,14 +2,11 @@ package com.alba.reader;
 
 import org.json.JSONObject;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 
 public class ComicBookNhl {
@@ -30,59 +27,91 @@ public class ComicBookNhl {
             throw new FileNotFoundException();
         }
 
-        return new ComicBook(file.getName(),getPagesFromGifInZip(file));
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return load(session);
+        }
+    }
+
+    // Open the comic without touching the library
+    public static ComicBook open(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException();
+        }
+
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return open(session);
+        }
+    }
+
+    // Load from an archive that is already opened and add the comic to the library as opened
+    public static ComicBook load(ArchiveSession session) throws IOException {
+        ComicBook comicBook = open(session);
+        ComicListManager comicListManager = new ComicListManager();
+        comicListManager.updateJSON(comicBook.title(), comicBook.metadata(), session.getFile().getAbsolutePath());
+        return comicBook;
     }
 
-    public static ComicPage[] getPagesFromGifInZip(File file) throws IOException {
-        try (ZipFile zip = new ZipFile(file)) {
-            Enumeration<? extends ZipEntry> entries = zip.entries();
-            ComicPage[] pagesTemp = new ComicPage[0];
-            JSONObject metadata = new JSONObject();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-
-                // Only process GIF files
-                if (!entry.isDirectory() && entry.getName().matches(".*\\.(gif)$")) {
-                    try (InputStream inputStream = zip.getInputStream(entry);
-                         ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
-
-                        // Get the ImageReader for GIF
-                        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
-                        if (readers.hasNext()) {
-                            ImageReader reader = readers.next();
-
-                            // Set the input for the reader
-                            reader.setInput(imageInputStream);
-
-                            int count = reader.getNumImages(true);
-                            ComicPage[] pages = new ComicPage[count];
-                            for (int index = 0; index < count; index++) {
-                                BufferedImage image = reader.read(index);
-                                pages[count - index - 1] = new ComicPage(image); // reverse page order
-                            }
-                            pagesTemp = pages;
-
-                        }
-                    } catch (IOException ex) {
-                        // Handle exceptions as needed
+    // Open from an archive that is already opened, without touching the library
+    public static ComicBook open(ArchiveSession session) throws IOException {
+        File file = session.getFile();
+        ComicPage[] pagesTemp = new ComicPage[0];
+        JSONObject metadata = new JSONObject();
+        for (ZipEntry entry : session.getEntries()) {
+
+            // Only process GIF files
+            if (!entry.isDirectory() && entry.getName().matches(".*\\.(gif)$")) {
+                try {
+                    // Only the frame index is needed here, every frame is decoded when its page is requested
+                    String entryName = entry.getName();
+                    GifFrameIndex index = GifFrameIndex.get(session, entryName);
+                    int count = index.getFrameCount();
+                    ComicPage[] pages = new ComicPage[count];
+                    for (int frame = 0; frame < count; frame++) {
+                        pages[count - frame - 1] = new ComicPage(entryName + "#" + frame, new GifFrameSource(file, entryName, index, frame)); // reverse page order
                     }
+                    pagesTemp = pages;
+                } catch (IOException ex) {
+                    System.err.println("Error reading GIF entry: " + entry.getName() + " - " + ex.getMessage());
                 }
+            }
 
-                if (!entry.isDirectory() && entry.getName().matches(".*\\.(json)$")) {
-                    InputStream inputStream = zip.getInputStream(entry);
+            if (!entry.isDirectory() && entry.getName().matches(".*\\.(json)$")) {
+                try (InputStream inputStream = session.open(entry)) {
                     MetadataManager metadataManager = new MetadataManager(inputStream);
                     metadata = metadataManager.getMetadata();
-
                 }
-            }
-            ComicListManager comicListManager = new ComicListManager();
-            comicListManager.updateJSON(file.getName(), metadata, file.getAbsolutePath());
 
-            return pagesTemp;
+            }
         }
-       // return new ComicPage[0];
+        return new ComicBook(file, pagesTemp, metadata);
     }
 
+    // A single frame of the GIF inside the .nhlcomic file
+    private record GifFrameSource(File file, String entryName, GifFrameIndex index, int frame) implements PageSource {
 
+        @Override
+        public InputStream open() throws IOException {
+            try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+                return session.open(entryName);
+            }
+        }
 
+        @Override
+        public BufferedImage read() throws IOException {
+            try (InputStream inputStream = open()) {
+                return index.readFrame(inputStream, frame);
+            }
+        }
+
+        // Frames are small compared to scanned pages, so they are always decoded in full
+        @Override
+        public BufferedImage read(int targetWidth, int targetHeight) throws IOException {
+            return read();
+        }
+
+        @Override
+        public Dimension size() {
+            return index.getFrameSize(frame);
+        }
+    }
 }
@@ -1,14 +1,15 @@
 package com.alba.reader;
 
+import org.json.JSONObject;
+
 import javax.imageio.ImageIO;
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.json.JSONObject;
-
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
@@ -29,72 +30,69 @@ public class ComicBookRar {
         return load(file);
     }
 
+    // Open the comic and add it to the library as opened. The metadata of a solid archive is only there when it
+    // was already read, so the first page doesn't wait for the whole archive, see completeMetadata
     public static ComicBook load(File file) throws IOException {
-        if (!file.exists()) {
-            throw new FileNotFoundException();
-        }
-        List<BufferedImage> images = extractImages(file);
+        ComicBook comicBook = open(file, false);
+        ComicListManager comicListManager = new ComicListManager();
+        comicListManager.updateJSON(file.getName(), comicBook.metadata(), file.getAbsolutePath());
+        return comicBook;
+    }
 
-        ComicPage[] pages = new ComicPage[images.size()];
+    // Open the comic without touching the library
+    public static ComicBook open(File file) throws IOException {
+        return open(file, true);
+    }
 
-        for (int i = 0; i < images.size(); i++) {
-            pages[i] = new ComicPage(images.get(i));
+    // Read the metadata of a comic that was loaded without it and add it to the library, meant to be called
+    // after the first page is shown. Also spools the pages stored before the metadata
+    public static void completeMetadata(ComicBook comicBook, File file) throws IOException {
+        if (!comicBook.metadata().isEmpty()) {
+            return;
+        }
+        ComicListManager comicListManager = new ComicListManager();
+        if (!comicListManager.getMetadata(file.getName()).isEmpty()) {
+            return; // Read on an earlier open
+        }
+        JSONObject metadata = RarPageIndex.get(file).getMetadata();
+        if (!metadata.isEmpty()) {
+            comicListManager.updateArchiveMetadata(file.getName(), metadata);
         }
-        return new ComicBook(file.getName(), pages);
     }
 
-    private static List<BufferedImage> extractImages(File file) throws IOException {
-        List<BufferedImage> images = new ArrayList<>();
-        JSONObject metadata = new JSONObject();
-        try (Archive archive = new Archive(file)) {
-            FileHeader fileHeader = archive.nextFileHeader();
-            while (fileHeader != null) {
-                // Only process image files
-                if (!fileHeader.isDirectory() && fileHeader.getFileName().matches(".*\\.(jpg|jpeg|png|gif)$")) {
-                    try (InputStream is = archive.getInputStream(fileHeader);
-                         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-
-                        byte[] buffer = new byte[16384];
-                        int bytesRead;
-                        while ((bytesRead = is.read(buffer)) != -1) {
-                            byteArrayOutputStream.write(buffer, 0, bytesRead);
-                        }
-                        BufferedImage image = ImageIO.read(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
-                        if (image != null) {
-                            images.add(image);
-
-                        } else {
-                            System.err.println("Failed to read image: " + fileHeader.getFileName());
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Error reading entry: " + fileHeader.getFileName());
-                    }
+    private static ComicBook open(File file, boolean readMetadata) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException();
+        }
+        RarPageIndex index = RarPageIndex.get(file);
+        JSONObject metadata = readMetadata || !index.isSolid() ? index.getMetadata() : index.getMetadataIfRead();
+
+        // Pages are read through the page index, the image is decoded when the page is requested. The size comes
+        // from the index as well, so it is kept for the library
+        List<String> imageNames = index.getImageNames();
+        ComicPage[] pages = new ComicPage[imageNames.size()];
+        for (int i = 0; i < imageNames.size(); i++) {
+            int page = i;
+            pages[i] = new ComicPage(imageNames.get(i), new PageSource() {
+                @Override
+                public InputStream open() throws IOException {
+                    return index.open(page);
                 }
 
-                if (!fileHeader.isDirectory() && fileHeader.getFileName().matches(".*\\.(xml)$")) {
-                    InputStream inputStream = archive.getInputStream(fileHeader);
-                    MetadataManager metadataManager = new MetadataManager(inputStream);
-                    metadata = metadataManager.XMLtoMetadata();
+                @Override
+                public Dimension size() throws IOException {
+                    return index.getPageSize(page);
                 }
-
-                fileHeader = archive.nextFileHeader();
-            }
-        } catch (RarException e) {
-            throw new IOException("Error reading RAR file", e);
+            });
         }
-        ComicListManager comicListManager = new ComicListManager();
-        comicListManager.updateJSON(file.getName(), metadata, file.getAbsolutePath());
-
-        return images; // Return the list of images
+        return new ComicBook(file, pages, metadata != null ? metadata : new JSONObject());
     }
 
     public static List<FileHeader> getMatchingEntries(File file, List<String> fileTypes) throws IOException {
         List<FileHeader> entries = new ArrayList<>();
 
-        System.out.println("Starting to read RAR file: " + file.getName());
-
+        long startTime = System.nanoTime();
         try (Archive archive = new Archive(file)) {
-            long rarOpenStartTime = System.currentTimeMillis();
             FileHeader fileHeader = archive.nextFileHeader();
 
             while (fileHeader != null) {
@@ -108,8 +106,7 @@ public class ComicBookRar {
                 }
                 fileHeader = archive.nextFileHeader();
             }
-            long rarOpenEndTime = System.currentTimeMillis();
-            System.out.println("Time taken to open RAR and read entries: " + (rarOpenEndTime - rarOpenStartTime) + " ms");
+            Metrics.time("rar.entries.list", startTime);
         } catch (RarException e) {
             throw new IOException("Error reading RAR file", e);
         }
@@ -118,40 +115,23 @@ public class ComicBookRar {
     }
 
     public static BufferedImage extractFirstImage(File file) throws IOException {
-        BufferedImage firstImage = null;
-        System.out.println("Starting to read RAR file: " + file.getName());
-        try (Archive archive = new Archive(file)) {
-            long rarOpenStartTime = System.currentTimeMillis();
-            FileHeader fileHeader = archive.nextFileHeader();
-            while (fileHeader != null) {
-                // Only process image files
-                if (!fileHeader.isDirectory() && fileHeader.getFileName().matches(".*\\.(jpg|jpeg|png|gif)$")) {
-                    try (InputStream is = archive.getInputStream(fileHeader);
-                         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-
-                        byte[] buffer = new byte[16384];
-                        int bytesRead;
-                        while ((bytesRead = is.read(buffer)) != -1) {
-                            byteArrayOutputStream.write(buffer, 0, bytesRead);
-                        }
-                        firstImage = ImageIO.read(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
-                        if (firstImage != null) {
-                            break; // Exit after processing the first image
-                        } else {
-                            System.err.println("Failed to read image: " + fileHeader.getFileName());
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Error reading entry: " + fileHeader.getFileName());
-                    }
+        return extractFirstImage(file, 0, 0);
+    }
+
+    // Decode the first image at about the target size, a target of 0 decodes it in full
+    public static BufferedImage extractFirstImage(File file, int targetWidth, int targetHeight) throws IOException {
+        RarPageIndex index = RarPageIndex.get(file);
+        for (int i = 0; i < index.getPageCount(); i++) {
+            try (InputStream is = index.open(i)) {
+                BufferedImage image = targetWidth > 0 ? ImageTools.readImage(is, targetWidth, targetHeight) : ImageIO.read(is);
+                if (image != null) {
+                    return image; // Return the first image that can be read
                 }
-                fileHeader = archive.nextFileHeader();
+                System.err.println("Failed to read image: " + index.getImageNames().get(i));
+            } catch (IOException e) {
+                System.err.println("Error reading entry: " + index.getImageNames().get(i));
             }
-            long rarOpenEndTime = System.currentTimeMillis();
-            System.out.println("Time taken to open RAR and read image: " + (rarOpenEndTime - rarOpenStartTime) + " ms");
-        } catch (RarException e) {
-            throw new IOException("Error reading RAR file", e);
         }
-
-        return firstImage; // Return the first image found, or null if none
+        return null; // No image found
     }
 }
@@ -2,14 +2,12 @@ package com.alba.reader;
 
 import org.json.JSONObject;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import javax.xml.stream.XMLStreamException;
+
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 public class ComicBookZip {
 
@@ -32,103 +30,78 @@ public class ComicBookZip {
             throw new FileNotFoundException();
         }
 
-        // Unzip and get image entries
-        long startTime = System.currentTimeMillis();
-        List<ZipEntry> imageEntries = unzip(file, Arrays.asList("jpg", "jpeg", "png", "gif"));
-        List<BufferedImage> images = processImageEntries(file, imageEntries);
-        long endTime = System.currentTimeMillis();
-        System.out.println("Total time taken for unzipping: " + (endTime - startTime) + " ms");
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return load(session);
+        }
+    }
 
-        // Process metadata entries
-        processMetadataEntries(file);
+    // Open the comic without touching the library
+    public static ComicBook open(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException();
+        }
 
-        ComicPage[] pages = new ComicPage[images.size()];
-        for (int i = 0; i < images.size(); i++) {
-            pages[i] = new ComicPage(images.get(i));
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return open(session);
         }
-        return new ComicBook(file.getName(), pages);
     }
 
-    public static List<ZipEntry> unzip(File file, List<String> fileTypes) throws IOException {
-        List<ZipEntry> entries = new ArrayList<>();
-
-        System.out.println("Starting to unzip file: " + file.getName());
+    // Load from an archive that is already opened and add the comic to the library as opened
+    public static ComicBook load(ArchiveSession session) throws IOException {
+        ComicBook comicBook = open(session);
+        updateComicList(comicBook.title(), comicBook.metadata(), session.getFile().getAbsolutePath());
+        return comicBook;
+    }
 
-        try (ZipFile zip = new ZipFile(file)) {
-            long zipOpenStartTime = System.currentTimeMillis();
-            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+    // Open the comic without touching the library, the images themselves are only decoded when a page is requested
+    public static ComicBook open(ArchiveSession session) throws IOException {
+        File file = session.getFile();
+        List<ZipEntry> imageEntries = session.getImageEntries();
 
-            while (zipEntries.hasMoreElements()) {
-                ZipEntry entry = zipEntries.nextElement();
-                String entryName = entry.getName();
+        // Process metadata entries
+        JSONObject metadata = processMetadataEntries(session);
 
-                if (!entry.isDirectory()) {
-                    // Check if entry name matches any of the provided file types
-                    if (fileTypes.stream().anyMatch(entryName::endsWith)) {
-                        entries.add(entry);
-                    }
-                }
-            }
-            long zipOpenEndTime = System.currentTimeMillis();
-            System.out.println("Time taken to open zip and read entries: " + (zipOpenEndTime - zipOpenStartTime) + " ms");
+        ComicPage[] pages = new ComicPage[imageEntries.size()];
+        for (int i = 0; i < imageEntries.size(); i++) {
+            String entryName = imageEntries.get(i).getName();
+            pages[i] = new ComicPage(entryName, () -> openEntry(file, entryName));
         }
-        return entries;
+        return new ComicBook(file, pages, metadata);
     }
 
-    private static List<BufferedImage> processImageEntries(File file, List<ZipEntry> imageEntries) throws IOException {
-        List<BufferedImage> images;
-
-        try (ZipFile zip = new ZipFile(file)) {
-            System.out.println("Processing images...");
-            images = imageEntries.parallelStream()
-                    .map(entry -> processImageEntry(zip, entry))
-                    .filter(Objects::nonNull)  // Filter out any null images
-                    .collect(Collectors.toList());
+    // Open a single entry through the shared session of the archive
+    private static InputStream openEntry(File file, String entryName) throws IOException {
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return session.open(entryName);
         }
-
-        System.out.println("Finished processing images. Total images processed: " + images.size());
-        return images;
     }
 
-    private static BufferedImage processImageEntry(ZipFile zip, ZipEntry entry) {
-        try (InputStream is = zip.getInputStream(entry)) {
-            BufferedImage image = ImageIO.read(is);
-            if (image != null) {
-                System.out.println("Successfully read image: " + entry.getName());
-                return image; // Return the image
-            } else {
-                System.err.println("Failed to read image (null): " + entry.getName());
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading image entry: " + entry.getName() + " - " + e.getMessage());
+    public static List<ZipEntry> unzip(File file, List<String> fileTypes) throws IOException {
+        try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+            return session.getEntries(fileTypes);
         }
-        return null; // Return null for any failed image processing
     }
 
-    private static void processMetadataEntries(File file) throws IOException {
-        // Get XML entries using unzip method
-        List<ZipEntry> xmlEntries = unzip(file, Collections.singletonList("xml"));
+    private static JSONObject processMetadataEntries(ArchiveSession session) {
+        List<ZipEntry> xmlEntries = session.getEntries(Collections.singletonList("xml"));
         ConcurrentHashMap<String, Object> metadata = new ConcurrentHashMap<>();
 
-        try (ZipFile zip = new ZipFile(file)) {
-            for (ZipEntry entry : xmlEntries) {
-                processMetadataEntry(zip, entry, metadata);
-            }
-            updateComicList(file.getName(), new JSONObject(metadata), file.getAbsolutePath());
+        for (ZipEntry entry : xmlEntries) {
+            processMetadataEntry(session, entry, metadata);
         }
+        return new JSONObject(metadata);
     }
 
-    private static void processMetadataEntry(ZipFile zip, ZipEntry entry, ConcurrentHashMap<String, Object> metadata) {
-        try (InputStream inputStream = zip.getInputStream(entry)) {
-            MetadataManager metadataManager = new MetadataManager(inputStream);
-            JSONObject entryMetadata = metadataManager.XMLtoMetadata();
+    private static void processMetadataEntry(ArchiveSession session, ZipEntry entry, ConcurrentHashMap<String, Object> metadata) {
+        try (InputStream inputStream = session.open(entry)) {
+            JSONObject entryMetadata = ComicInfo.parse(inputStream).toJSON();
 
             // Merge entryMetadata into metadata
             for (String key : entryMetadata.keySet()) {
                 metadata.put(key, entryMetadata.get(key));
-                System.out.println("Added metadata entry: " + key);
             }
-        } catch (IOException e) {
+            Metrics.counter("metadata.entries").increment();
+        } catch (IOException | XMLStreamException e) {
             System.err.println("Error reading metadata entry: " + entry.getName() + " - " + e.getMessage());
         }
     }
@@ -136,6 +109,5 @@ public class ComicBookZip {
     private static void updateComicList(String fileName, JSONObject metadata, String path) throws IOException {
         ComicListManager comicListManager = new ComicListManager();
         comicListManager.updateJSON(fileName, metadata, path);
-        System.out.println("Updated comic list JSON for: " + fileName);
     }
 }
@@ -2,66 +2,178 @@ package com.alba.reader;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.*;
 
-class ComicCellRenderer extends DefaultListCellRenderer {
-    private static final int IMAGE_WIDTH = 180;  // Desired width for scaling
-    private static final int IMAGE_HEIGHT = 320; // Desired height for scaling
-    private final Map<ImageIcon, ImageIcon> imageCache = new HashMap<>();
+// One panel is reused for every cell, the list only paints it with the values of the comic in that cell.
+// Like DefaultListCellRenderer, filling in a cell doesn't repaint, revalidate or notify anything: the labels don't,
+// and the panel is only laid out again when the list paints it.
+// Thumbnails are normally already made at the cell size, other images are scaled once and kept in a small cache.
+class ComicCellRenderer extends JPanel implements ListCellRenderer<Object> {
+    static final int IMAGE_WIDTH = 180;  // Desired width for scaling
+    static final int IMAGE_HEIGHT = 320; // Desired height for scaling
+    static final int CELL_WIDTH = 320;
+    static final int CELL_HEIGHT = IMAGE_HEIGHT + 60;
+    private static final int MAX_CACHED_ICONS = 256;
 
-    @Override
-    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-        if (value instanceof Comic comic) {
-
-            // Create a JPanel to hold the image and text
-            JPanel panel = new JPanel();
-            panel.setLayout(new BorderLayout());
-            if (comic.read) {
-                panel.setBorder(BorderFactory.createLineBorder(Color.GREEN, 2)); // Green border if read
-            } else {
-                panel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5)); // Padding
-            }
-
-            // Retrieve or scale the image
-            ImageIcon scaledIcon = getScaledIcon(comic.thumbnail);
-            JLabel imageLabel = new JLabel(scaledIcon);
-            imageLabel.setPreferredSize(new Dimension(IMAGE_WIDTH, IMAGE_HEIGHT));
-            imageLabel.setHorizontalAlignment(JLabel.CENTER);
-            imageLabel.setVerticalAlignment(JLabel.CENTER);
-            panel.add(imageLabel, BorderLayout.CENTER);
+    private final Map<ImageIcon, ImageIcon> imageCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ImageIcon, ImageIcon> eldest) {
+            return size() > MAX_CACHED_ICONS;
+        }
+    };
+    private final JLabel imageLabel = new RendererLabel();
+    private final JLabel titleLabel = new RendererLabel();
+    private final JLabel subtitleLabel = new RendererLabel();
+    private final JPanel textPanel = new JPanel();
+    private final DefaultListCellRenderer fallback = new DefaultListCellRenderer();
+    private final javax.swing.border.Border readBorder = BorderFactory.createLineBorder(Color.GREEN, 2); // Green border if read
+    private final javax.swing.border.Border unreadBorder = BorderFactory.createEmptyBorder(5, 5, 5, 5); // Padding
 
-            // Create a JPanel for the text
-            JPanel textPanel = new JPanel();
-            textPanel.setLayout(new BoxLayout(textPanel, BoxLayout.Y_AXIS));
+    ComicCellRenderer() {
+        setLayout(new BorderLayout());
 
-            JLabel titleLabel = new JLabel(comic.title);
-            JLabel subtitleLabel = new JLabel("Last Opened: " + comic.lastOpened + " | Page " + comic.currentPage + " of " + comic.totalPages);
+        imageLabel.setPreferredSize(new Dimension(IMAGE_WIDTH, IMAGE_HEIGHT));
+        imageLabel.setHorizontalAlignment(JLabel.CENTER);
+        imageLabel.setVerticalAlignment(JLabel.CENTER);
+        add(imageLabel, BorderLayout.CENTER);
 
-            textPanel.add(titleLabel);
-            textPanel.add(subtitleLabel);
+        // Create a JPanel for the text
+        textPanel.setLayout(new BoxLayout(textPanel, BoxLayout.Y_AXIS));
+        textPanel.setOpaque(false);
+        textPanel.add(titleLabel);
+        textPanel.add(subtitleLabel);
+        add(textPanel, BorderLayout.SOUTH);
 
-            panel.add(textPanel, BorderLayout.SOUTH);
+        setPreferredSize(new Dimension(CELL_WIDTH, CELL_HEIGHT));
+    }
 
-            panel.setPreferredSize(new Dimension(subtitleLabel.getPreferredSize().width + 20, IMAGE_HEIGHT + 60));
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        if (value instanceof Comic comic) {
+            setBorder(comic.read ? readBorder : unreadBorder);
+            setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
 
-            return panel;
+            imageLabel.setIcon(getScaledIcon(comic.thumbnail));
+            titleLabel.setText(comic.title);
+            subtitleLabel.setText("Last Opened: " + comic.lastOpened + " | Page " + comic.currentPage + " of " + comic.totalPages);
+            // The labels don't invalidate themselves, the list lays the panel out for the new text when it paints it
+            textPanel.invalidate();
+            return this;
         }
-        return super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        return fallback.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
     }
 
     private ImageIcon getScaledIcon(ImageIcon icon) {
+        // Thumbnails that already have the right size are drawn as they are, so is an image that failed to load
+        if (icon.getIconWidth() <= 0 || icon.getIconWidth() == IMAGE_WIDTH && icon.getIconHeight() == IMAGE_HEIGHT) {
+            return icon;
+        }
+
         // Check if the scaled image is already cached
-        if (imageCache.containsKey(icon)) {
-            return imageCache.get(icon);
+        ImageIcon scaledIcon = imageCache.get(icon);
+        if (scaledIcon != null) {
+            return scaledIcon;
         }
 
         // Scale the image
         Image img = icon.getImage();
-        Image scaledImg = img.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH);
-        ImageIcon scaledIcon = new ImageIcon(scaledImg);
+        BufferedImage image = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        scaledIcon = new ImageIcon(ImageTools.scaleImage(image, IMAGE_WIDTH, IMAGE_HEIGHT));
 
         // Cache the scaled image
         imageCache.put(icon, scaledIcon);
         return scaledIcon;
     }
-}
\ No newline at end of file
+
+    // JList paints the same component for every cell, changing the border or background must not queue a
+    // validation or repaint of the list, the same way DefaultListCellRenderer does
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void repaint(Rectangle r) {
+    }
+
+    @Override
+    public void repaint() {
+    }
+
+    // A label that is only ever painted by the list, with the same overrides as DefaultListCellRenderer
+    private static class RendererLabel extends JLabel {
+
+        @Override
+        public void validate() {
+        }
+
+        @Override
+        public void invalidate() {
+        }
+
+        @Override
+        public void revalidate() {
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+        }
+
+        @Override
+        public void repaint(Rectangle r) {
+        }
+
+        @Override
+        public void repaint() {
+        }
+
+        // The look and feel keeps the HTML view of the label up to date with these, nothing else is passed on
+        @Override
+        protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+            if ("text".equals(propertyName)
+                    || (("font".equals(propertyName) || "foreground".equals(propertyName)) && oldValue != newValue
+                    && getClientProperty(javax.swing.plaf.basic.BasicHTML.propertyKey) != null)) {
+                super.firePropertyChange(propertyName, oldValue, newValue);
+            }
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, byte oldValue, byte newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, char oldValue, char newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, short oldValue, short newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, int oldValue, int newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, long oldValue, long newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, float oldValue, float newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, double oldValue, double newValue) {
+        }
+
+        @Override
+        public void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
+        }
+    }
+}
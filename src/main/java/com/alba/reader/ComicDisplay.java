@@ -2,23 +2,57 @@ package com.alba.reader;
 
 import org.json.JSONObject;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class ComicDisplay extends JFrame {
     private final ComicReader comicReader; // Reference to ComicReader
+    private static ImageIcon placeholderIcon;
+    private final JList<Comic> comicList;
+    private LibraryLoader libraryLoader;
+    private Consumer<Comic> watcherListener;
+    private final DefaultListModel<Comic> libraryModel;
+    private final JTextField searchField = new JTextField();
+    private final Timer searchTimer;
+    private boolean indexLoading;
+
+    public ComicDisplay(ComicReader comicReader) {
+        this(new ArrayList<>(), comicReader);
+
+        // The window is shown right away, the library is read and the comics are filled in while they load
+        DefaultListModel<Comic> model = libraryModel;
+        libraryLoader = new LibraryLoader(model);
+        libraryLoader.start();
+
+        // Comics found in the library folders are added while the window is open
+        watcherListener = comic -> SwingUtilities.invokeLater(() -> {
+            for (int i = 0; i < model.size(); i++) {
+                if (model.get(i).title.equals(comic.title)) {
+                    model.set(i, comic);
+                    return;
+                }
+            }
+            model.addElement(comic);
+        });
+        LibraryWatcher.getInstance().addListener(watcherListener);
+
+        // Build or load the search index before the first search
+        loadIndex();
+    }
 
     public ComicDisplay(List<Comic> comics, ComicReader comicReader) {
         this.comicReader = comicReader;
@@ -28,17 +62,19 @@ public class ComicDisplay extends JFrame {
         setSize(800, 600);
 
         // Create the JList
-        JList<Comic> comicList = new JList<>(new DefaultListModel<>());
-        DefaultListModel<Comic> model = (DefaultListModel<Comic>) comicList.getModel();
+        libraryModel = new DefaultListModel<>();
+        comicList = new JList<>(libraryModel);
         for (Comic comic : comics) {
-            model.addElement(comic);
+            libraryModel.addElement(comic);
         }
 
         // Set custom cell renderer
         comicList.setCellRenderer(new ComicCellRenderer());
         comicList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
         comicList.setVisibleRowCount(-1);
-        //comicList.setFixedCellHeight(100); // Adjust height as needed
+        // Every cell has the same size, so the list doesn't have to measure each comic to lay them out
+        comicList.setFixedCellWidth(ComicCellRenderer.CELL_WIDTH);
+        comicList.setFixedCellHeight(ComicCellRenderer.CELL_HEIGHT);
 
         // Add mouse listener for click events
         comicList.addMouseListener(new MouseAdapter() {
@@ -46,12 +82,50 @@ public class ComicDisplay extends JFrame {
             public void mouseClicked(MouseEvent e) {
                 int index = comicList.locationToIndex(e.getPoint());
                 if (index >= 0) {
-                    Comic selectedComic = model.getElementAt(index);
+                    Comic selectedComic = comicList.getModel().getElementAt(index);
                     onComicSelected(selectedComic.filePath); // Call the method to handle the click
                 }
             }
         });
 
+        // Search the library, the list shows the matching comics while typing
+        searchTimer = new Timer(200, e -> search(searchField.getText()));
+        searchTimer.setRepeats(false);
+        searchField.setToolTipText("Search by word, field:word (series, title, writer, publisher, tags) or year:1990-1995");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        // Comics that finish loading while searching are filtered again, once for a batch of changes
+        libraryModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                refreshSearch();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                refreshSearch();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                refreshSearch();
+            }
+        });
+        add(searchField, BorderLayout.NORTH);
+
         // Add the list to a scroll pane
         JScrollPane scrollPane = new JScrollPane(comicList);
         add(scrollPane, BorderLayout.CENTER);
@@ -59,6 +133,62 @@ public class ComicDisplay extends JFrame {
         setVisible(true);
     }
 
+    @Override
+    public void dispose() {
+        searchTimer.stop();
+        if (libraryLoader != null) {
+            libraryLoader.cancel();
+            LibraryWatcher.getInstance().removeListener(watcherListener);
+        }
+        super.dispose();
+    }
+
+    private void search(String query) {
+        if (query.isBlank()) {
+            comicList.setModel(libraryModel);
+            return;
+        }
+        // The EDT never waits for the index, until it is loaded there are no results and the search runs again
+        // once it is
+        MetadataIndex index = MetadataIndex.getIfLoaded();
+        if (index == null) {
+            comicList.setModel(new DefaultListModel<>());
+            loadIndex();
+            return;
+        }
+        Set<String> matches = index.search(query);
+        DefaultListModel<Comic> results = new DefaultListModel<>();
+        for (int i = 0; i < libraryModel.size(); i++) {
+            Comic comic = libraryModel.get(i);
+            if (matches.contains(comic.title)) {
+                results.addElement(comic);
+            }
+        }
+        comicList.setModel(results);
+    }
+
+    private void loadIndex() {
+        if (indexLoading) {
+            return;
+        }
+        indexLoading = true;
+        Thread.ofVirtual().name("metadata-index").start(() -> {
+            try {
+                MetadataIndex.getInstance();
+                SwingUtilities.invokeLater(this::refreshSearch);
+            } catch (IOException e) {
+                System.err.println("Error loading metadata index: " + e.getMessage());
+                SwingUtilities.invokeLater(() -> indexLoading = false);
+            }
+        });
+    }
+
+    private void refreshSearch() {
+        if (!searchField.getText().isBlank()) {
+            searchTimer.restart();
+        }
+    }
+
     private void onComicSelected(String filePath) {
         File comicFile = new File(filePath);
         if (comicReader != null) {
@@ -70,61 +200,91 @@ public class ComicDisplay extends JFrame {
     }
 
     public static List<Comic> parseComics() throws IOException {
-        // Read the file contents
-        String content = new String(Files.readAllBytes(LocalAppDataUtil.getFile("ComicList.json", "/Alba/ComicReader").toPath()));
-
-        // Parse the content
-        JSONObject jsonObject = new JSONObject(content);
+        // Read the library
+        Map<String, JSONObject> library = LibraryStore.getInstance().getAll();
         ArrayList<Comic> comicsList = new ArrayList<>();
 
-        for (String key : jsonObject.keySet()) {
-            JSONObject comicJson = jsonObject.getJSONObject(key);
-            String path = comicJson.getString("path");
-            boolean read = comicJson.getBoolean("read");
-            long lastOpened = comicJson.getLong("lastOpened");
-            int currentPage = comicJson.getInt("currentPage");
-            int totalPages = getTotalPages(path);
-            ImageIcon thumbnail = getThumbnail(path);
-            String title = key; // Using the key as the title
-
-            // Create a new Comic object
-            Comic comic = new Comic(title, thumbnail, read, lastOpened, currentPage, totalPages, path);
-            comicsList.add(comic);
+        for (String key : library.keySet()) {
+            comicsList.add(loadComic(key, library.get(key)));
         }
 
         // Return the list
         return comicsList;
     }
 
+    // Create a comic from its library entry, this opens the comic for the page count and the thumbnail
+    static Comic loadComic(String key, JSONObject comicJson) throws IOException {
+        String path = comicJson.getString("path");
+        boolean read = comicJson.getBoolean("read");
+        long lastOpened = comicJson.getLong("lastOpened");
+        int currentPage = comicJson.getInt("currentPage");
+        ImageIcon thumbnail = getThumbnail(path);
+        String title = key; // Using the key as the title
+
+        // The page count is stored in the library, the archive is only opened when the file changed
+        File comicFile = new File(path);
+        ComicListManager comicListManager = new ComicListManager();
+        int totalPages = comicListManager.getPageCount(key, comicFile);
+        if (totalPages < 0) {
+            totalPages = getTotalPages(path);
+            comicListManager.updatePageInfo(key, comicFile, totalPages, null);
+        }
+
+        // Create a new Comic object
+        return new Comic(title, thumbnail, read, lastOpened, currentPage, totalPages, path);
+    }
+
+    // Create a comic from only what is in its library entry, shown until the comic itself is loaded
+    static Comic createPlaceholder(String key, JSONObject comicJson) {
+        String path = comicJson.getString("path");
+        boolean read = comicJson.getBoolean("read");
+        long lastOpened = comicJson.getLong("lastOpened");
+        int currentPage = comicJson.getInt("currentPage");
+        return new Comic(key, getPlaceholderIcon(), read, lastOpened, currentPage, 0, path);
+    }
+
+    private static synchronized ImageIcon getPlaceholderIcon() {
+        if (placeholderIcon == null) {
+            BufferedImage image = new BufferedImage(ComicCellRenderer.IMAGE_WIDTH, ComicCellRenderer.IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.GRAY);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.dispose();
+            placeholderIcon = new ImageIcon(image);
+        }
+        return placeholderIcon;
+    }
+
     private static int getTotalPages(String path) throws IOException {
         int totalPages = 0;
         File comicFile = new File(path);
-        if (FileTypeDetector.isZip(path)) {
-            totalPages = ComicBookZip.unzip(comicFile, Arrays.asList("jpg", "jpeg", "png", "gif")).size();
-        }else if (FileTypeDetector.isRar(path)) {
-            totalPages = ComicBookRar.getMatchingEntries(comicFile, Arrays.asList("jpg", "jpeg", "png", "gif")).size();
+        ComicFormat format = FileTypeDetector.detect(comicFile);
+        if (format == ComicFormat.CBZ || format == ComicFormat.NHL) {
+            try (ArchiveSession session = ArchiveSessionPool.acquire(comicFile)) {
+                totalPages = session.getPageCount();
+            }
+        }else if (format == ComicFormat.CBR) {
+            totalPages = RarPageIndex.get(comicFile).getPageCount();
         }
 
         return totalPages;
     }
 
     private static ImageIcon getThumbnail(String path) throws IOException {
-        ImageIcon thumbnail;
-        File comicFile = new File(path);
-        if (FileTypeDetector.isZip(path)) {
-            ZipEntry thumbnailEntry = ComicBookZip.unzip(comicFile, Arrays.asList("jpg", "jpeg", "png", "gif")).getFirst();
-            ZipFile zip = new ZipFile(comicFile);
-            InputStream is = zip.getInputStream(thumbnailEntry);
-            thumbnail = new ImageIcon(ImageIO.read(is));
-        }else if (FileTypeDetector.isRar(path)) {
-            thumbnail = new ImageIcon(ComicBookRar.extractFirstImage(comicFile));
-        }else{
-            thumbnail = new ImageIcon("src/main/resources/reader/Assets/1.jpg");
+        // Thumbnails come from the thumbnail cache, only a new or changed comic is opened to make one
+        BufferedImage thumbnail = ThumbnailCache.getThumbnail(new File(path), ComicCellRenderer.IMAGE_WIDTH, ComicCellRenderer.IMAGE_HEIGHT);
+        if (thumbnail == null) {
+            return new ImageIcon("src/main/resources/reader/Assets/1.jpg");
         }
-        return thumbnail;
+        return new ImageIcon(thumbnail);
     }
 
     public static void showComicDisplay(List<Comic> comics, ComicReader comicReader) {
         SwingUtilities.invokeLater(() -> new ComicDisplay(comics, comicReader));
     }
+
+    // Show the library window right away and load the comics in the background
+    public static void showComicDisplay(ComicReader comicReader) {
+        SwingUtilities.invokeLater(() -> new ComicDisplay(comicReader));
+    }
 }
@@ -0,0 +1,8 @@
+package com.alba.reader;
+
+public enum ComicFormat {
+    CBZ,
+    CBR,
+    NHL,
+    UNKNOWN
+}
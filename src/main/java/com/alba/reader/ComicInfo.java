@@ -0,0 +1,301 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import javax.xml.stream.*;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The metadata of a comic as stored in ComicInfo.xml. The XML is read as a stream, element by element, so a
+// document is never held in memory as a whole. Fields that don't have their own component are kept in other.
+// Elements with child elements, like the page list, are kept in other as their XML and written back as elements.
+// Numbers that are not set are -1, the same as in the schema, so a PageCount of 0 is still written back.
+// Numbers that can't be read, like 1990? or 1.5, are -1 as well and their text is kept in other.
+public record ComicInfo(String title, String series, String number, int volume, int year, int month,
+                        String writer, String penciller, String publisher, String genre, String tags,
+                        String characters, String summary, int pageCount, String languageIso,
+                        Map<String, String> other) {
+
+    public static final String ROOT = "ComicInfo";
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    public static ComicInfo empty() {
+        return of(Collections.emptyMap());
+    }
+
+    // Create the metadata from the text of the ComicInfo elements, keyed by element name
+    public static ComicInfo of(Map<String, String> fields) {
+        Map<String, String> other = new LinkedHashMap<>(fields);
+        return new ComicInfo(other.remove("Title"), other.remove("Series"), other.remove("Number"),
+                toInt(other, "Volume"), toInt(other, "Year"), toInt(other, "Month"),
+                other.remove("Writer"), other.remove("Penciller"), other.remove("Publisher"),
+                other.remove("Genre"), other.remove("Tags"), other.remove("Characters"),
+                other.remove("Summary"), toInt(other, "PageCount"), other.remove("LanguageISO"),
+                Collections.unmodifiableMap(other));
+    }
+
+    public static ComicInfo parse(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            Map<String, String> fields = new LinkedHashMap<>();
+
+            // Skip to the root element, the fields are its children
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    fields.put(name, readText(reader));
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    break; // End of the root element
+                }
+            }
+            return of(fields);
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Write the metadata as a ComicInfo.xml document
+    public void write(OutputStream outputStream) throws XMLStreamException {
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement(ROOT);
+            writer.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+            writer.writeNamespace("xsd", "http://www.w3.org/2001/XMLSchema");
+            for (Map.Entry<String, String> field : toFields().entrySet()) {
+                if (isElement(field.getKey(), field.getValue())) {
+                    writeElement(writer, field.getValue());
+                } else {
+                    writer.writeStartElement(field.getKey());
+                    writer.writeCharacters(field.getValue());
+                    writer.writeEndElement();
+                }
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    // The metadata as it is stored in the library, wrapped in the root element like the XML
+    public JSONObject toJSON() {
+        JSONObject fields = new JSONObject();
+        for (Map.Entry<String, String> field : toFields().entrySet()) {
+            fields.put(field.getKey(), field.getValue());
+        }
+        putNumber(fields, "Volume", volume);
+        putNumber(fields, "Year", year);
+        putNumber(fields, "Month", month);
+        putNumber(fields, "PageCount", pageCount);
+
+        JSONObject metadata = new JSONObject();
+        metadata.put(ROOT, fields);
+        return metadata;
+    }
+
+    // Read metadata from the library, both the wrapped form and the flat form the metadata dialog saves
+    public static ComicInfo fromJSON(JSONObject metadata) {
+        JSONObject fields = metadata.optJSONObject(ROOT);
+        if (fields == null) {
+            fields = metadata;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String key : fields.keySet()) {
+            Object value = fields.opt(key);
+            // Leftovers of the old XML to JSON conversion are not fields
+            if (value != null && !JSONObject.NULL.equals(value) && !key.startsWith("xmlns")) {
+                values.put(key, value.toString());
+            }
+        }
+        return of(values);
+    }
+
+    // All fields that are set, in the order of the ComicInfo schema
+    public Map<String, String> toFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        putText(fields, "Title", title);
+        putText(fields, "Series", series);
+        putText(fields, "Number", number);
+        putText(fields, "Volume", volume);
+        putText(fields, "Summary", summary);
+        putText(fields, "Year", year);
+        putText(fields, "Month", month);
+        putText(fields, "Writer", writer);
+        putText(fields, "Penciller", penciller);
+        putText(fields, "Publisher", publisher);
+        putText(fields, "Genre", genre);
+        putText(fields, "Tags", tags);
+        putText(fields, "PageCount", pageCount);
+        putText(fields, "LanguageISO", languageIso);
+        putText(fields, "Characters", characters);
+        fields.putAll(other);
+        return fields;
+    }
+
+    // The text of the current element, or the XML of the whole element when it has child elements
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getLocalName();
+        StringBuilder text = null;
+        String firstText = null;
+        while (true) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    return readElement(reader, name, text != null ? text.toString() : firstText);
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    String value = text != null ? text.toString() : firstText;
+                    return value != null ? value.trim() : "";
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    // Most elements have a single block of text, only join when there is more
+                    if (firstText == null) {
+                        firstText = reader.getText();
+                    } else {
+                        if (text == null) {
+                            text = new StringBuilder(firstText);
+                        }
+                        text.append(reader.getText());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    // Copy an element with child elements to XML, the reader is at the start of its first child
+    private static String readElement(XMLStreamReader reader, String name, String text) throws XMLStreamException {
+        StringWriter xml = new StringWriter();
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(xml);
+        writer.writeStartElement(name);
+        if (text != null && !text.isBlank()) {
+            writer.writeCharacters(text.trim());
+        }
+        int depth = 1;
+        int event = reader.getEventType();
+        while (depth > 0) {
+            copyEvent(reader, writer, event);
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+            if (depth > 0) {
+                event = reader.next();
+            }
+        }
+        writer.close();
+        return xml.toString();
+    }
+
+    // Write an element kept as XML into the document
+    private static void writeElement(XMLStreamWriter writer, String xml) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(xml));
+        try {
+            while (reader.hasNext()) {
+                copyEvent(reader, writer, reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void copyEvent(XMLStreamReader reader, XMLStreamWriter writer, int event) throws XMLStreamException {
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT -> {
+                writer.writeStartElement(reader.getLocalName());
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+            }
+            case XMLStreamConstants.END_ELEMENT -> writer.writeEndElement();
+            case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                if (!reader.isWhiteSpace()) {
+                    writer.writeCharacters(reader.getText());
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // Whether a field holds an element kept as XML rather than text, only XML that can be read back counts
+    private static boolean isElement(String name, String value) {
+        if (!value.startsWith("<" + name) || !value.endsWith(">")) {
+            return false;
+        }
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(value));
+            try {
+                reader.nextTag();
+                if (!reader.getLocalName().equals(name)) {
+                    return false;
+                }
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+            } finally {
+                reader.close();
+            }
+            return true;
+        } catch (XMLStreamException e) {
+            return false;
+        }
+    }
+
+    private static void putText(Map<String, String> fields, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            fields.put(name, value);
+        }
+    }
+
+    // A number that couldn't be read is written back as the text it had
+    private void putText(Map<String, String> fields, String name, int value) {
+        if (value >= 0) {
+            fields.put(name, Integer.toString(value));
+        } else if (other.containsKey(name)) {
+            fields.put(name, other.get(name));
+        }
+    }
+
+    private static void putNumber(JSONObject fields, String name, int value) {
+        if (value >= 0) {
+            fields.put(name, value);
+        }
+    }
+
+    // Take a number out of the fields, text that isn't a number stays in the fields
+    private static int toInt(Map<String, String> fields, String name) {
+        String value = fields.remove(name);
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            fields.put(name, value);
+            return -1;
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Metadata comes from downloaded files, don't resolve anything outside the document
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
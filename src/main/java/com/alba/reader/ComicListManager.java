@@ -1,14 +1,13 @@
 package com.alba.reader;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
+import java.awt.*;
 import java.io.*;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 
-import static com.alba.reader.LocalAppDataUtil.*;
-
 public class ComicListManager {
 
     public ComicListManager() {
@@ -16,85 +15,192 @@ public class ComicListManager {
     }
 
     public JSONObject getMetadata(String filename) throws IOException {
-        try (FileReader reader = LoadComicList()) {
-            JSONTokener jsonTokener = new JSONTokener(reader);
-            JSONObject comicList = new JSONObject(jsonTokener);
-
-            return comicList.getJSONObject(filename).getJSONObject("metadata");
+        JSONObject comic = LibraryStore.getInstance().get(filename);
+        if (comic == null) {
+            throw new IOException("Comic not in library: " + filename);
         }
+        return comic.getJSONObject("metadata");
     }
 
     public void updateMetadata(List<String> entries, String filename) throws IOException {
-        try (FileReader reader = LoadComicList()) {
-            JSONTokener jsonTokener = new JSONTokener(reader);
-            JSONObject comicList = new JSONObject(jsonTokener);
-
-            JSONObject thisComic = comicList.getJSONObject(filename);
-            JSONObject metadata = new JSONObject();
-            for (int i = 0; i < entries.size(); i+=2) {
-                if (!Objects.equals(entries.get(i), "")) {
-                    metadata.put(entries.get(i), entries.get(i + 1));
-                }
+        LibraryStore library = LibraryStore.getInstance();
+        JSONObject thisComic = library.get(filename);
+        if (thisComic == null) {
+            throw new IOException("Comic not in library: " + filename);
+        }
+
+        JSONObject metadata = new JSONObject();
+        for (int i = 0; i < entries.size(); i+=2) {
+            if (!Objects.equals(entries.get(i), "")) {
+                metadata.put(entries.get(i), entries.get(i + 1));
             }
-            thisComic.remove("metadata");
-            thisComic.put("metadata", metadata);
-            comicList.remove(filename);
-            comicList.put(filename, thisComic);
+        }
+        thisComic.remove("metadata");
+        thisComic.put("metadata", metadata);
+
+        // Only this record is written to the library
+        library.put(filename, thisComic);
+        MetadataIndex.updateLater(filename, thisComic);
+    }
 
-            writeStringToFile("/Alba/ComicReader/ComicList.json", comicList.toString(4));
+    // Store metadata read from the archive after the comic was added, metadata that was edited or already read is kept
+    public void updateArchiveMetadata(String filename, JSONObject metadata) throws IOException {
+        LibraryStore library = LibraryStore.getInstance();
+        JSONObject thisComic = library.get(filename);
+        if (thisComic == null || thisComic.optBoolean("metadataEdited") || !thisComic.getJSONObject("metadata").isEmpty()) {
+            return;
         }
+        thisComic.put("metadata", metadata);
+        library.put(filename, thisComic);
+        MetadataIndex.updateLater(filename, thisComic);
     }
 
     public void updateJSON(String filename, JSONObject metadata, String path) throws IOException {
-        try (FileReader reader = LoadComicList()) {
-            JSONTokener jsonTokener = new JSONTokener(reader);
-            JSONObject comicList = new JSONObject(jsonTokener);
-
-            boolean metadataEdited = false;
-            boolean read = false;
-            int currentPage = 0;
-            boolean favorite = false;
-            JSONObject annotations = new JSONObject();
-
-            // Remove the entry of the current comic if it exists, this will add the current comic to the end
-            // Please make sure to load comics from the comic list in reverse order
-            if (comicList.has(filename)) {
-                // Do not change the information stored in an entry when a comic is loaded
-                metadataEdited = comicList.getJSONObject(filename).getBoolean("metadataEdited");
-                read = comicList.getJSONObject(filename).getBoolean("read");
-                currentPage = comicList.getJSONObject(filename).getInt("currentPage");
-                metadata = comicList.getJSONObject(filename).getJSONObject("metadata");
-                favorite = comicList.getJSONObject(filename).getBoolean("favorite");
-                annotations = comicList.getJSONObject(filename).getJSONObject("annotations");
-                comicList.remove(filename);
+        long startTime = System.nanoTime();
+        LibraryStore library = LibraryStore.getInstance();
+
+        // Putting the entry again moves the current comic to the end of the library
+        // Please make sure to load comics from the comic list in reverse order
+        Date d = new Date();
+        long time = d.getTime() / 1000;
+        JSONObject comicData = createRecord(library.get(filename), metadata, path, time);
+
+        library.put(filename, comicData);
+        MetadataIndex.updateLater(filename, comicData);
+        Metrics.time("library.update", startTime);
+    }
+
+    // Add a comic found in a library folder together with its page information, in a single write.
+    // A comic that was already in the library keeps its last opened time, a new comic was never opened.
+    // Returns the record that was stored
+    public JSONObject addScannedComic(File file, ComicBook comicBook, Dimension[] sizes) throws IOException {
+        long startTime = System.nanoTime();
+        LibraryStore library = LibraryStore.getInstance();
+        JSONObject existing = library.get(file.getName());
+        long lastOpened = existing != null ? existing.getLong("lastOpened") : 0;
+
+        JSONObject comicData = createRecord(existing, comicBook.metadata(), file.getAbsolutePath(), lastOpened);
+        putPageInfo(comicData, file, comicBook.getPageCount(), sizes);
+
+        library.put(file.getName(), comicData);
+        MetadataIndex.updateLater(file.getName(), comicData);
+        Metrics.time("library.update", startTime);
+        return comicData;
+    }
+
+    private static JSONObject createRecord(JSONObject existing, JSONObject metadata, String path, long lastOpened) {
+        boolean metadataEdited = false;
+        boolean read = false;
+        int currentPage = 0;
+        boolean favorite = false;
+        JSONObject annotations = new JSONObject();
+
+        if (existing != null) {
+            // Do not change the information stored in an entry when a comic is loaded
+            metadataEdited = existing.getBoolean("metadataEdited");
+            read = existing.getBoolean("read");
+            currentPage = existing.getInt("currentPage");
+            metadata = existing.getJSONObject("metadata");
+            favorite = existing.getBoolean("favorite");
+            annotations = existing.getJSONObject("annotations");
+        }
+
+        // Create/Re-create the entry
+        JSONObject comicData = new JSONObject();
+        comicData.put("metadata", metadata);
+        comicData.put("metadataEdited", metadataEdited);
+        comicData.put("read", read);
+        comicData.put("currentPage", currentPage);
+        comicData.put("lastOpened", lastOpened);
+        comicData.put("path", path);
+        comicData.put("favorite", favorite);
+        comicData.put("annotations", annotations);
+
+        // Keep the page information of the comic as long as the file is the same
+        if (existing != null && existing.has("fingerprint")) {
+            comicData.put("fingerprint", existing.getString("fingerprint"));
+            comicData.put("pageCount", existing.getInt("pageCount"));
+            if (existing.has("pageSizes")) {
+                comicData.put("pageSizes", existing.getJSONArray("pageSizes"));
             }
+        }
+        return comicData;
+    }
 
-            Date d = new Date();
-            long time = d.getTime() / 1000;
+    // Identifies a version of a comic file, the page information is only valid for the same fingerprint
+    public static String fingerprint(File file) {
+        return file.length() + "-" + file.lastModified();
+    }
 
-            // Create/Re-create the entry
-            JSONObject comicData = new JSONObject();
-            comicData.put("metadata", metadata);
-            comicData.put("metadataEdited", metadataEdited);
-            comicData.put("read", read);
-            comicData.put("currentPage", currentPage);
-            comicData.put("lastOpened", time);
-            comicData.put("path", path);
-            comicData.put("favorite", favorite);
-            comicData.put("annotations", annotations);
+    // Whether the comic is in the library with page information for this version of the file
+    public boolean isUpToDate(String filename, File file) throws IOException {
+        return fingerprint(file).equals(LibraryStore.getInstance().getString(filename, "fingerprint"));
+    }
 
-            comicList.put(filename, comicData);
+    // The stored page count of a comic, or -1 when it is unknown or the file changed since it was stored
+    public int getPageCount(String filename, File file) throws IOException {
+        JSONObject comic = LibraryStore.getInstance().get(filename);
+        if (comic == null || !fingerprint(file).equals(comic.optString("fingerprint"))) {
+            return -1;
+        }
+        return comic.optInt("pageCount", -1);
+    }
 
-            writeStringToFile("/Alba/ComicReader/ComicList.json", comicList.toString(4));
+    // The stored size of every page of a comic, or null when they are unknown or the file changed since they were stored.
+    // Pages of a CBR whose size wasn't read yet are null
+    public Dimension[] getPageSizes(String filename, File file) throws IOException {
+        JSONObject comic = LibraryStore.getInstance().get(filename);
+        if (comic == null || !comic.has("pageSizes") || !fingerprint(file).equals(comic.optString("fingerprint"))) {
+            return null;
+        }
+        JSONArray pageSizes = comic.getJSONArray("pageSizes");
+        Dimension[] sizes = new Dimension[pageSizes.length()];
+        for (int i = 0; i < sizes.length; i++) {
+            if (!pageSizes.isNull(i)) {
+                JSONArray size = pageSizes.getJSONArray(i);
+                sizes[i] = new Dimension(size.getInt(0), size.getInt(1));
+            }
         }
+        return sizes;
     }
 
-    public FileReader LoadComicList() throws IOException {
-        createFileInLocalAppData("ComicList.json", "/Alba/ComicReader");
-        File comicL = getFile("ComicList.json", "/Alba/ComicReader");
-        if (comicL.length() == 0) {
-            writeStringToFile("/Alba/ComicReader/ComicList.json", "{}");
+    // Store the page count and, when known, the size of every page of a comic. Sizes that are null are kept as they
+    // were stored, so the sizes of a CBR fill up as its pages are read
+    public void updatePageInfo(String filename, File file, int pageCount, Dimension[] sizes) throws IOException {
+        LibraryStore library = LibraryStore.getInstance();
+        JSONObject thisComic = library.get(filename);
+        if (thisComic == null) {
+            return;
+        }
+
+        putPageInfo(thisComic, file, pageCount, sizes);
+        library.put(filename, thisComic);
+    }
+
+    private static void putPageInfo(JSONObject comic, File file, int pageCount, Dimension[] sizes) {
+        String fingerprint = fingerprint(file);
+        // Same file, the sizes that are already stored are kept
+        JSONArray stored = fingerprint.equals(comic.optString("fingerprint")) && comic.has("pageSizes")
+                ? comic.getJSONArray("pageSizes") : null;
+        JSONArray pageSizes = stored;
+        if (sizes != null) {
+            pageSizes = new JSONArray();
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] != null) {
+                    pageSizes.put(new JSONArray().put(sizes[i].width).put(sizes[i].height));
+                } else if (stored != null && stored.length() == sizes.length && !stored.isNull(i)) {
+                    pageSizes.put(stored.getJSONArray(i));
+                } else {
+                    pageSizes.put(JSONObject.NULL);
+                }
+            }
+        }
+
+        comic.put("fingerprint", fingerprint);
+        comic.put("pageCount", pageCount);
+        comic.remove("pageSizes");
+        if (pageSizes != null) {
+            comic.put("pageSizes", pageSizes);
         }
-        return new FileReader(getFile("ComicList.json", "/Alba/ComicReader"));
     }
 }
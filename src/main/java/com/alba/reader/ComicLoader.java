@@ -1,11 +1,24 @@
 package com.alba.reader;
 
 import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 
 public class ComicLoader {
+    // Fired on the EDT as soon as the first page is decoded, the new value is the index of that page
+    public static final String FIRST_PAGE = "firstPage";
+    // Fired on the EDT when the progress starts counting something else, the new value is the language key of it.
+    // Only the first page is decoded while loading, after that the progress counts the page sizes that are read
+    public static final String PHASE = "phase";
+    public static final String LOADING_FIRST_PAGE = "loadingFirstPage";
+    public static final String READING_PAGE_SIZES = "readingPageSizes";
+
     private final File file;
-    private ComicBook comicBook;
+    private ComicFormat format;
+    private volatile ComicBook comicBook;
+    private volatile BufferedImage firstPage;
     private final JProgressBar progressBar;
     private SwingWorker<ComicBook, Integer> worker;
 
@@ -18,41 +31,79 @@ public class ComicLoader {
         worker = new SwingWorker<>() {
             @Override
             protected ComicBook doInBackground() throws Exception {
-                if (FileTypeDetector.isNhl(file)) {
-                    System.out.println("nhl");
-                    comicBook = ComicBookNhl.load(file);
-                    for (int i = 0; i < comicBook.getPageCount(); i++) {
-                        publish(i + 1); // Publish progress
+                long startTime = System.nanoTime();
+                comicBook = openComicBook();
+
+                // Pages are handed out in reading order, the first page is shown as soon as it is decoded
+                firePropertyChange(PHASE, null, LOADING_FIRST_PAGE);
+                int pageCount = comicBook.getPageCount();
+                int first = 0;
+                BufferedImage firstImage = null;
+                while (first < pageCount && firstImage == null) {
+                    firstImage = comicBook.getPage(first).image();
+                    first++;
+                    publish(first);
+                }
+                firstPage = firstImage;
+                Metrics.time("comic.firstPage", startTime);
+                if (firstImage != null) {
+                    PageCache.getInstance().put(new PageCache.Key(comicBook.id(), first - 1, 1), firstImage);
+                    firePropertyChange(FIRST_PAGE, null, first - 1);
+                }
+                if (format == ComicFormat.CBR && !isCancelled()) {
+                    ComicBookRar.completeMetadata(comicBook, file);
+                }
+
+                // Page sizes stored in the library are handed to the book so their headers don't have to be read.
+                // Otherwise they are read in a single pass for ZIP based comics, where every page can be reached
+                // directly. A RAR page can only be reached by walking the archive, so there the size of a page is
+                // read when the page is spooled. The sizes known so far are stored now, RarPageIndex stores the rest
+                // once every page was spooled
+                ComicListManager comicListManager = new ComicListManager();
+                if (firstImage != null) {
+                    comicBook.setPageSize(first - 1, new Dimension(firstImage.getWidth(), firstImage.getHeight()));
+                }
+                Dimension[] sizes = comicListManager.getPageSizes(file.getName(), file);
+                boolean complete = sizes != null && sizes.length == pageCount;
+                if (complete) {
+                    for (int i = 0; i < pageCount; i++) {
+                        if (sizes[i] != null) {
+                            comicBook.setPageSize(i, sizes[i]);
+                        } else {
+                            complete = false;
+                        }
                     }
-                    return comicBook;
-                } else if (FileTypeDetector.isRar(file)) {
-                    System.out.println("rar");
-                    comicBook = ComicBookRar.load(file);
-                    for (int i = 0; i < comicBook.getPageCount(); i++) {
-                        publish(i + 1); // Publish progress
+                }
+                if (format == ComicFormat.CBR) {
+                    comicListManager.updatePageInfo(file.getName(), file, pageCount, RarPageIndex.get(file).getKnownPageSizes());
+                } else if (!complete) {
+                    firePropertyChange(PHASE, LOADING_FIRST_PAGE, READING_PAGE_SIZES);
+                    sizes = new Dimension[pageCount];
+                    for (int i = 0; i < pageCount && !isCancelled(); i++) {
+                        sizes[i] = comicBook.getPageSize(i);
+                        publish(i + 1);
                     }
-                    return comicBook;
-                } else if (FileTypeDetector.isZip(file)) {
-                    System.out.println("zip");
-                    comicBook = ComicBookZip.load(file);
-                    for (int i = 0; i < comicBook.getPageCount(); i++) {
-                        publish(i + 1); // Publish progress
+                    if (!isCancelled()) {
+                        comicListManager.updatePageInfo(file.getName(), file, pageCount, sizes);
                     }
-                    return comicBook;
-                } else {
-                    throw new IllegalArgumentException("Unsupported file format");
                 }
+                return comicBook;
             }
 
             @Override
             protected void process(java.util.List<Integer> chunks) {
                 // Update progress bar based on published progress
                 int progress = chunks.getLast(); // Get the last published progress
+                if (progressBar.isIndeterminate() && comicBook != null) {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setMaximum(comicBook.getPageCount());
+                }
                 progressBar.setValue(progress);
             }
 
             @Override
             protected void done() {
+                progressBar.setIndeterminate(false);
                 progressBar.setValue(0); // Reset progress bar
             }
         };
@@ -61,10 +112,26 @@ public class ComicLoader {
         worker.execute();
     }
 
+    private ComicBook openComicBook() throws IOException {
+        format = FileTypeDetector.detect(file);
+        Metrics.counter("comic.open." + format.name().toLowerCase()).increment();
+        return switch (format) {
+            case CBR -> ComicBookRar.load(file);
+            case NHL -> ComicBookNhl.load(file);
+            case CBZ -> ComicBookZip.load(file);
+            default -> throw new IllegalArgumentException("Unsupported file format");
+        };
+    }
+
     public ComicBook getComicBook() {
         return comicBook;
     }
 
+    // The decoded first page, so it doesn't have to be decoded again to show it
+    public BufferedImage getFirstPage() {
+        return firstPage;
+    }
+
     public SwingWorker<ComicBook, Integer> getWorker() {
         return worker;
     }
@@ -1,21 +1,55 @@
 package com.alba.reader;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 
-public record ComicPage(BufferedImage image) {
+// A page is only a reference to an entry in the archive, the image is decoded when it is requested
+public record ComicPage(String name, PageSource source) {
 
-    public int getWidth() {
-        if (this.image == null) {
-            return 0;
+    public BufferedImage image() {
+        return image(0, 0);
+    }
+
+    // Decode the page at about the target size, a target of 0 decodes the full page
+    public BufferedImage image(int targetWidth, int targetHeight) {
+        long startTime = System.nanoTime();
+        try {
+            BufferedImage image = targetWidth > 0 && targetHeight > 0 ? source.read(targetWidth, targetHeight) : source.read();
+            if (image == null) {
+                Metrics.counter("page.decode.failures").increment();
+                System.err.println("Failed to read image (null): " + name);
+            } else {
+                Metrics.time("page.decode", startTime);
+            }
+            return image;
+        } catch (IOException e) {
+            Metrics.counter("page.decode.failures").increment();
+            System.err.println("Error reading image entry: " + name + " - " + e.getMessage());
+            return null;
         }
-        return this.image.getWidth();
+    }
+
+    public int getWidth() {
+        return size().width;
     }
 
     public int getHeight() {
-        if (this.image == null) {
-            return 0;
+        return size().height;
+    }
+
+    // The size of the full page, read from the image header
+    public Dimension getSize() {
+        return size();
+    }
+
+    private Dimension size() {
+        try {
+            Dimension size = source.size();
+            return size != null ? size : new Dimension();
+        } catch (IOException e) {
+            return new Dimension();
         }
-        return this.image.getHeight();
     }
 
 }
@@ -13,7 +13,6 @@ import java.io.File;
 import java.awt.image.BufferedImage;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.List;
 import java.util.Objects;
 
 import static com.alba.reader.LocalAppDataUtil.getFile;
@@ -22,19 +21,30 @@ import static com.alba.reader.LocalAppDataUtil.writeStringToFile;
 
 public class ComicReader extends JFrame {
     private ComicBook comicBook;
-    private final JLabel imageLabel = new JLabel();
-    private final JScrollPane scrollPane = new JScrollPane(imageLabel);
+    private final PageView pageView = new PageView();
+    private final JScrollPane scrollPane = new JScrollPane(pageView);
     private final JProgressBar progressBar = new JProgressBar();
     private final JPanel buttonPanel = new JPanel();
     private final HelpMenu helpMenu = new HelpMenu();
     private final ViewMenu viewMenu = new ViewMenu(this);
     private final OpenMenu openMenu = new OpenMenu(this);
     private final JMenuBar menuBar = new JMenuBar();
+    private final PagePrefetcher prefetcher = new PagePrefetcher();
     private File currentComic;
+    private BufferedImage currentImage;
+    private PagePyramid currentPyramid;
+    private Dimension currentPageSize = new Dimension();
     private BufferedImage cachedImage;
     private int currentPageIndex = 0;
+    // The page that is being turned to, it takes the place of the current page once it is decoded
+    private int requestedPageIndex = 0;
+    private long pageRequest;
     private float zoomFactor = 1.0f;
     private float lastZoomFactor = 1.0f;
+    private float displayedZoom = 1.0f;
+    private volatile long zoomRequest;
+    private final Timer zoomTimer = new Timer(ZOOM_DELAY_MS, e -> applyZoom());
+    private static final int ZOOM_DELAY_MS = 150;
     private static final float ZOOM_IN_LIMIT = 3.0f;
     private static final float ZOOM_OUT_LIMIT = 0.05f;
     private final JSONObject lang;
@@ -68,6 +78,7 @@ public class ComicReader extends JFrame {
         setupMenuBar();
         setupKeyBindings();
         setupMouseWheelZoom();
+        zoomTimer.setRepeats(false);
 
 
         toggleDarkMode(settings.getBoolean("darkMode"));
@@ -83,7 +94,6 @@ public class ComicReader extends JFrame {
     }
 
     private void setupScrollPane() {
-        imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scrollPane.getHorizontalScrollBar().setUnitIncrement(16);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -109,8 +119,8 @@ public class ComicReader extends JFrame {
         nextButton.setFocusPainted(false);
 
         // Set button actions
-        prevButton.addActionListener(e -> showPage(currentPageIndex - 1));
-        nextButton.addActionListener(e -> showPage(currentPageIndex + 1));
+        prevButton.addActionListener(e -> showPage(requestedPageIndex - 1));
+        nextButton.addActionListener(e -> showPage(requestedPageIndex + 1));
 
         buttonPanel.add(prevButton);
         buttonPanel.add(nextButton);
@@ -131,8 +141,8 @@ public class ComicReader extends JFrame {
         InputMap inputMap = scrollPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
         ActionMap actionMap = scrollPane.getActionMap();
 
-        bindKeyAction(inputMap, actionMap, "LEFT", "prevPage", e -> showPage(currentPageIndex - 1));
-        bindKeyAction(inputMap, actionMap, "RIGHT", "nextPage", e -> showPage(currentPageIndex + 1));
+        bindKeyAction(inputMap, actionMap, "LEFT", "prevPage", e -> showPage(requestedPageIndex - 1));
+        bindKeyAction(inputMap, actionMap, "RIGHT", "nextPage", e -> showPage(requestedPageIndex + 1));
         bindKeyAction(inputMap, actionMap, "control EQUALS", "zoomIn", e -> zoom(1.2f));
         bindKeyAction(inputMap, actionMap, "control MINUS", "zoomOut", e -> zoom(0.8f));
         bindKeyAction(inputMap, actionMap, "UP", "scrollUp", e -> scroll(-20));
@@ -166,11 +176,16 @@ public class ComicReader extends JFrame {
     public void openComic() {
         // Clear the current comic and its resources
         if (comicBook != null) {
+            prefetcher.cancel(); // Stop prefetching pages of the current comic
             comicBook = null; // Clear reference to the current comic
             currentComic = null; // Clear file
+            currentImage = null; // Clear decoded page
+            currentPyramid = null;
             cachedImage = null; // Clear cached image
             currentPageIndex = 0; // Reset current page index
-            imageLabel.setIcon(null); // Clear displayed image
+            requestedPageIndex = 0;
+            pageRequest++; // Pages of the old comic that are still decoding are not shown anymore
+            pageView.clear(); // Clear displayed image
         }
 
         JFileChooser fileChooser = new JFileChooser();
@@ -186,6 +201,18 @@ public class ComicReader extends JFrame {
         loadComicInBackground(comicFile); // Load the comic
     }
 
+    public void addLibraryFolder() {
+        JFileChooser folderChooser = new JFileChooser();
+        folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (folderChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                LibraryWatcher.getInstance().addFolder(folderChooser.getSelectedFile());
+            } catch (IOException e) {
+                showError(lang.getString("libraryFolderError") + e.getMessage());
+            }
+        }
+    }
+
     public File getCurrentComic() {
         return currentComic;
     }
@@ -197,17 +224,33 @@ public class ComicReader extends JFrame {
         loader.loadComicInBackground();
 
         loader.getWorker().addPropertyChangeListener(evt -> {
-            if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+            if (ComicLoader.PHASE.equals(evt.getPropertyName())) {
+                progressBar.setVisible(true);
+                progressBar.setStringPainted(true);
+                progressBar.setString(lang.optString((String) evt.getNewValue()));
+                progressBar.setValue(0);
+            } else if (ComicLoader.FIRST_PAGE.equals(evt.getPropertyName())) {
+                // Show the first page while the rest of the comic is still loading, the progress only comes back
+                // when the loader starts counting something else
+                progressBar.setVisible(false);
+                comicBook = loader.getComicBook();
+                zoomFactor = 1.0f; // Reset zoom
+                displayPage((Integer) evt.getNewValue(), loader.getFirstPage());
+                fillWidth();
+            } else if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                progressBar.setVisible(false);
+                if (comicBook != null && comicBook == loader.getComicBook()) {
+                    return; // Already showing
+                }
                 try {
-                    comicBook = loader.getComicBook();
+                    comicBook = loader.getWorker().get();
                     currentPageIndex = 0;
                     zoomFactor = 1.0f; // Reset zoom
                     showPage(currentPageIndex);
-                    progressBar.setVisible(false);
                     fillWidth();
                 } catch (Exception e) {
-                    showError(lang.getString("loadingErrorWithMessage") + e.getMessage());
-                    progressBar.setVisible(false);
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError(lang.getString("loadingErrorWithMessage") + cause.getMessage());
                 }
             }
         });
@@ -221,20 +264,76 @@ public class ComicReader extends JFrame {
         if (index < 0 || index >= comicBook.getPageCount()){
             return;
         }
+        requestedPageIndex = index;
+        long request = ++pageRequest;
+        ComicBook book = comicBook;
+        float zoom = zoomFactor;
+
+        // A prefetched page is shown right away
+        if (book.hasPageSize(index)) {
+            Dimension pageSize = book.getPageSize(index);
+            BufferedImage cached = PageCache.getInstance().getCachedPage(book, index, (int) (pageSize.width * zoom), (int) (pageSize.height * zoom));
+            if (cached != null) {
+                displayPage(index, cached, pageSize);
+                return;
+            }
+        }
+
+        // Otherwise the current page stays up until the new page is decoded on the prefetch threads, the EDT never
+        // waits for the archive. Only the page that is shown gets decoded, and when zoomed out only at about the
+        // size it is shown at
+        setTitle(book.title() + lang.getString("pageCount") + (index + 1) + "/" + book.getPageCount());
+        prefetcher.execute(() -> {
+            Dimension pageSize = book.getPageSize(index);
+            BufferedImage image;
+            try {
+                image = PageCache.getInstance().getPage(book, index, (int) (pageSize.width * zoom), (int) (pageSize.height * zoom));
+            } catch (RuntimeException e) {
+                System.err.println("Error decoding page " + (index + 1) + " of " + book.title() + ": " + e.getMessage());
+                image = null;
+            }
+            BufferedImage decoded = image;
+            SwingUtilities.invokeLater(() -> {
+                if (request != pageRequest || book != comicBook) {
+                    return; // Turned to another page meanwhile
+                }
+                if (decoded == null) {
+                    showPage(index + 1);
+                    return;
+                }
+                Dimension size = pageSize.width <= 0 || pageSize.height <= 0 ? new Dimension(decoded.getWidth(), decoded.getHeight()) : pageSize;
+                displayPage(index, decoded, size);
+            });
+        });
+    }
+
+    private void displayPage(int index, BufferedImage image) {
+        displayPage(index, image, new Dimension(image.getWidth(), image.getHeight()));
+    }
+
+    private void displayPage(int index, BufferedImage image, Dimension pageSize) {
         currentPageIndex = index;
-        ComicPage page = comicBook.getPage(currentPageIndex);
+        requestedPageIndex = index;
+        currentImage = image;
+        currentPyramid = new PagePyramid(image);
+        currentPageSize = pageSize;
+        cachedImage = null;
+        updateImage(image);
+        prefetcher.prefetch(comicBook, index, zoomFactor);
+    }
 
-        if (page.image() == null) {
-            showPage(currentPageIndex + 1);
-        } else {
-            cachedImage = null;
-            updateImage(page);
+    // A page that was decoded at a lower resolution is decoded again on a worker when the zoom needs more detail,
+    // meanwhile the lower resolution is scaled up
+    private void ensureResolution() {
+        int targetWidth = (int) (currentPageSize.width * zoomFactor);
+        if (currentImage == null || currentImage.getWidth() >= Math.min(targetWidth, currentPageSize.width)) {
+            return;
         }
+        applyZoom();
     }
 
-    private void updateImage(ComicPage page) {
+    private void updateImage(BufferedImage image) {
         // Check if the page image is null, if so exit
-        BufferedImage image = page.image();
         if (image == null) {
             showError(lang.getString("unavailableImageError"));
             return;
@@ -243,30 +342,45 @@ public class ComicReader extends JFrame {
         // Calculate a relative minimum change threshold
         float relativeThreshold = Math.max(0.01f, zoomFactor * 0.05f);
 
-        // Scale the image only if the zoom factor has changed significantly
-        if (Math.abs(zoomFactor - lastZoomFactor) >= relativeThreshold) {
-            cachedImage = scaleImage(image, zoomFactor);
-            lastZoomFactor = zoomFactor; // Update lastZoomFactor
-        } else if (cachedImage == null) {
-            // If no significant change, but cachedImage is null, create the initial cached image
-            cachedImage = scaleImage(image, zoomFactor);
+        if (zoomFactor > 1.0f) {
+            // Zoomed in the page is drawn in tiles, a fully scaled page would be many times the screen size
+            cachedImage = null;
+            lastZoomFactor = zoomFactor;
+            displayedZoom = zoomFactor;
+            pageView.setPage(currentPyramid, currentPageSize, zoomFactor);
+        } else {
+            // Scale the image only if the zoom factor has changed significantly
+            if (Math.abs(zoomFactor - lastZoomFactor) >= relativeThreshold) {
+                cachedImage = getScaledPage(image);
+                lastZoomFactor = zoomFactor; // Update lastZoomFactor
+            } else if (cachedImage == null) {
+                // If no significant change, but cachedImage is null, create the initial cached image
+                cachedImage = getScaledPage(image);
+            }
+            displayedZoom = lastZoomFactor;
+            pageView.setPage(cachedImage);
         }
-
-        // Set the icon to the cached image
-        imageLabel.setIcon(new ImageIcon(cachedImage));
         setTitle(comicBook.title() + lang.getString("pageCount") + (currentPageIndex + 1) + "/" + comicBook.getPageCount());
         scrollPane.getVerticalScrollBar().setValue(0);
     }
 
-    private BufferedImage scaleImage(BufferedImage image, float zoomFactor) {
-        BufferedImage scaledImage = new BufferedImage(
-                (int) (image.getWidth() * zoomFactor),
-                (int) (image.getHeight() * zoomFactor),
-                BufferedImage.SCALE_SMOOTH
-        );
-        Graphics2D g2d = scaledImage.createGraphics();
-        g2d.drawImage(image, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
-        g2d.dispose();
+    private BufferedImage getScaledPage(BufferedImage image) {
+        return scalePage(comicBook, currentPageIndex, image, currentPyramid, currentPageSize, zoomFactor);
+    }
+
+    // The zoom factor is relative to the full page, the image itself may have been decoded at a lower resolution.
+    // Pages prefetched at the current zoom are already in the cache
+    private static BufferedImage scalePage(ComicBook book, int index, BufferedImage image, PagePyramid pyramid, Dimension pageSize, float zoom) {
+        int width = Math.max(1, (int) (pageSize.width * zoom));
+        int height = Math.max(1, (int) (pageSize.height * zoom));
+        PageCache.Key key = PageCache.Key.scaled(book.id(), index, width);
+        BufferedImage scaledImage = PageCache.getInstance().get(key);
+        if (scaledImage == null) {
+            // Start from the nearest mipmap level instead of the full page
+            BufferedImage source = pyramid != null && pyramid.getSource() == image ? pyramid.getLevel(width) : image;
+            scaledImage = ImageTools.scaleImage(source, width, height);
+            PageCache.getInstance().put(key, scaledImage);
+        }
         return scaledImage;
     }
 
@@ -315,6 +429,7 @@ public class ComicReader extends JFrame {
             }
             int pageNumber = Integer.parseInt(pageNumberField.getText());
             if (pageNumber > 0 && pageNumber <= comicBook.getPageCount()) {
+                prefetcher.cancel(); // The pages around the old page are not needed anymore
                 showPage(pageNumber - 1);
             } else {
                 showError(lang.getString("pageNumberOutOfRange"));
@@ -325,13 +440,23 @@ public class ComicReader extends JFrame {
     }
 
     public void fillWidth() {
-        zoomFactor = (float) scrollPane.getWidth() / comicBook.getPage(currentPageIndex).getWidth();
-        showPage(currentPageIndex);
+        if (currentImage == null) {
+            return;
+        }
+        zoomFactor = (float) scrollPane.getWidth() / currentPageSize.width;
+        cachedImage = null;
+        ensureResolution();
+        updateImage(currentImage);
     }
 
     public void fillHeight() {
-        zoomFactor = (float) scrollPane.getHeight() / comicBook.getPage(currentPageIndex).getHeight();
-        showPage(currentPageIndex);
+        if (currentImage == null) {
+            return;
+        }
+        zoomFactor = (float) scrollPane.getHeight() / currentPageSize.height;
+        cachedImage = null;
+        ensureResolution();
+        updateImage(currentImage);
     }
 
     public void zoom(float factor) {
@@ -346,12 +471,80 @@ public class ComicReader extends JFrame {
         }
         zoomFactor = tempZoomFactor;
 
-        // Only update the image if the comic book is loaded
-        if (comicBook != null) {
-            updateImage(comicBook.getPage(currentPageIndex));
+        // Only update the image if a page is shown. The shown page is stretched right away, the real rescale
+        // happens once the zoom events stop coming in
+        if (comicBook != null && currentImage != null) {
+            pageView.setPreviewScale(zoomFactor / displayedZoom);
+            zoomTimer.restart();
         }
     }
 
+    private record ZoomResult(BufferedImage source, BufferedImage scaled) {
+    }
+
+    // Rescale the current page for the latest zoom on a worker, results of older requests are thrown away
+    private void applyZoom() {
+        if (comicBook == null || currentImage == null) {
+            return;
+        }
+        long request = ++zoomRequest;
+        float zoom = zoomFactor;
+        ComicBook book = comicBook;
+        int index = currentPageIndex;
+        BufferedImage image = currentImage;
+        PagePyramid pyramid = currentPyramid;
+        Dimension pageSize = currentPageSize;
+
+        new SwingWorker<ZoomResult, Void>() {
+            @Override
+            protected ZoomResult doInBackground() {
+                if (request != zoomRequest) {
+                    return null; // Superseded before it started
+                }
+                // A page that was decoded at a lower resolution is decoded again when the zoom needs more detail
+                BufferedImage source = image;
+                PagePyramid sourcePyramid = pyramid;
+                int targetWidth = (int) (pageSize.width * zoom);
+                if (image.getWidth() < Math.min(targetWidth, pageSize.width)) {
+                    BufferedImage decoded = PageCache.getInstance().getPage(book, index, targetWidth, (int) (pageSize.height * zoom));
+                    if (decoded != null) {
+                        source = decoded;
+                        sourcePyramid = null;
+                    }
+                }
+                // Zoomed in pages are drawn in tiles, there is nothing to scale up front
+                BufferedImage scaled = zoom <= 1.0f ? scalePage(book, index, source, sourcePyramid, pageSize, zoom) : null;
+                return new ZoomResult(source, scaled);
+            }
+
+            @Override
+            protected void done() {
+                ZoomResult result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    return;
+                }
+                if (result == null || request != zoomRequest || book != comicBook || index != currentPageIndex) {
+                    return; // A newer zoom or another page is shown
+                }
+                if (result.source() != currentImage) {
+                    currentImage = result.source();
+                    currentPyramid = new PagePyramid(currentImage);
+                }
+                lastZoomFactor = zoom;
+                displayedZoom = zoom;
+                if (result.scaled() != null) {
+                    cachedImage = result.scaled();
+                    pageView.setPage(cachedImage);
+                } else {
+                    cachedImage = null;
+                    pageView.setPage(currentPyramid, currentPageSize, zoom);
+                }
+            }
+        }.execute();
+    }
+
     public void toggleDarkMode() {
         if (!FlatLaf.isLafDark()) {
             FlatDarkLaf.setup();
@@ -392,14 +585,15 @@ public class ComicReader extends JFrame {
                 throw new RuntimeException(e);
             }
 
-            // Show the ComicDisplay window with ComicReader
-            List<Comic> comics;
+            // Show the ComicDisplay window with ComicReader, the library is loaded in the background
+            ComicDisplay.showComicDisplay(comicReader);
+
+            // Keep the library up to date with the library folders
             try {
-                comics = ComicDisplay.parseComics();
+                LibraryWatcher.getInstance().start();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                System.err.println("Error watching library folders: " + e.getMessage());
             }
-            ComicDisplay.showComicDisplay(comics, comicReader);
         });
     }
 }
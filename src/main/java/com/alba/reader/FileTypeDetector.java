@@ -1,30 +1,71 @@
 package com.alba.reader;
 
-import com.github.junrar.Archive;
-import com.github.junrar.exception.RarException;
-
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.io.InputStream;
 
 public class FileTypeDetector {
 
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+    private static final byte[] EMPTY_ZIP_SIGNATURE = {'P', 'K', 5, 6};
+    private static final byte[] RAR4_SIGNATURE = {'R', 'a', 'r', '!', 0x1A, 0x07, 0x00};
+    private static final byte[] RAR5_SIGNATURE = {'R', 'a', 'r', '!', 0x1A, 0x07, 0x01, 0x00};
+
     private FileTypeDetector() {
 
     }
 
-    public static boolean isZip(String filePath) {
-        return isZip(new File(filePath));
+    public static ComicFormat detect(String filePath) {
+        return detect(new File(filePath));
     }
 
-    public static boolean isZip(File file) {
-        try (ZipFile zip = new ZipFile(file)) {
-            return zip.entries().hasMoreElements();
+    // Only the first bytes of the file are read, a ZIP file is then told apart from a .nhlcomic
+    // by the entries of its (shared) archive session
+    public static ComicFormat detect(File file) {
+        byte[] header;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            header = inputStream.readNBytes(RAR5_SIGNATURE.length);
         } catch (IOException e) {
+            return ComicFormat.UNKNOWN;
+        }
+
+        if (startsWith(header, RAR4_SIGNATURE) || startsWith(header, RAR5_SIGNATURE)) {
+            return ComicFormat.CBR;
+        }
+        if (startsWith(header, ZIP_SIGNATURE) || startsWith(header, EMPTY_ZIP_SIGNATURE)) {
+            try (ArchiveSession session = ArchiveSessionPool.acquire(file)) {
+                if (session.getEntries().isEmpty()) {
+                    return ComicFormat.UNKNOWN;
+                }
+                return session.isNhl() ? ComicFormat.NHL : ComicFormat.CBZ;
+            } catch (IOException e) {
+                return ComicFormat.UNKNOWN;
+            }
+        }
+        return ComicFormat.UNKNOWN;
+    }
+
+    private static boolean startsWith(byte[] header, byte[] signature) {
+        if (header.length < signature.length) {
             return false;
         }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isZip(String filePath) {
+        return isZip(new File(filePath));
+    }
+
+    // .nhlcomic files are ZIP files as well
+    public static boolean isZip(File file) {
+        ComicFormat format = detect(file);
+        return format == ComicFormat.CBZ || format == ComicFormat.NHL;
     }
 
     public static boolean isNhl(String filePath) {
@@ -32,29 +73,13 @@ public class FileTypeDetector {
     }
 
     public static boolean isNhl(File file){
-        if (isZip(file)) {
-            try (ZipFile zip = new ZipFile(file)) {
-                Enumeration<? extends ZipEntry> entries = zip.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    if (entry.getName().matches(".*\\.(gif)$"))
-                        return true;
-                }
-            } catch (IOException e) {
-                return false;
-            }
-        }
-        return false;
+        return detect(file) == ComicFormat.NHL;
     }
 
     public static boolean isRar(String filePath) {
         return isRar(new File(filePath));}
 
     public static boolean isRar(File file) {
-        try (Archive archive = new Archive(file)) {
-            return !archive.getFileHeaders().isEmpty();
-        } catch (IOException | RarException e) {
-            return false;
-        }
+        return detect(file) == ComicFormat.CBR;
     }
 }
@@ -0,0 +1,270 @@
+package com.alba.reader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Where every frame of a GIF starts and ends, found by skipping over the GIF blocks without decoding them.
+// A single frame is decoded by putting the GIF header in front of its bytes, so opening a comic does not
+// depend on the number of frames and only the frames that are viewed are ever decoded.
+public class GifFrameIndex {
+
+    private static final String INDEX_PATH = "/Alba/ComicReader/NhlIndex";
+    private static final int VERSION = 1;
+    // Indexes kept in memory, the oldest ones are dropped first. They are read back from disk when they are needed again
+    private static final int MAX_INDEXES = 32;
+    private static final ConcurrentHashMap<String, CompletableFuture<GifFrameIndex>> indexes = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+
+    private final byte[] header; // Signature, logical screen descriptor and global color table
+    private final List<Frame> frames;
+
+    private record Frame(long start, long end, int width, int height) {
+    }
+
+    private GifFrameIndex(byte[] header, List<Frame> frames) {
+        this.header = header;
+        this.frames = frames;
+    }
+
+    // Get the index of a GIF inside an archive, it is only built the first time and kept in memory and on disk.
+    // Only the GIF that is being indexed waits for its index, other GIFs are indexed at the same time
+    public static GifFrameIndex get(ArchiveSession session, String entryName) throws IOException {
+        File file = session.getFile();
+        String key = Integer.toHexString((file.getAbsolutePath() + "#" + entryName).hashCode()) + "-" + file.length() + "-" + file.lastModified();
+        CompletableFuture<GifFrameIndex> future = indexes.get(key);
+        if (future == null) {
+            CompletableFuture<GifFrameIndex> created = new CompletableFuture<>();
+            future = indexes.putIfAbsent(key, created);
+            if (future == null) {
+                try {
+                    GifFrameIndex index = loadOrBuild(session, entryName, key);
+                    created.complete(index);
+                    order.add(key);
+                    trim();
+                    return index;
+                } catch (IOException | RuntimeException e) {
+                    indexes.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        }
+    }
+
+    private static GifFrameIndex loadOrBuild(ArchiveSession session, String entryName, String key) throws IOException {
+        File indexFile = new File(LocalAppDataUtil.getDirectory(INDEX_PATH), key + ".idx");
+        if (indexFile.exists()) {
+            try {
+                return load(indexFile);
+            } catch (IOException e) {
+                System.err.println("Error reading frame index: " + indexFile.getName() + " - " + e.getMessage());
+            }
+        }
+        GifFrameIndex index;
+        try (InputStream inputStream = session.open(entryName)) {
+            index = build(inputStream);
+        }
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            System.err.println("Error writing frame index: " + indexFile.getName() + " - " + e.getMessage());
+        }
+        return index;
+    }
+
+    private static void trim() {
+        while (indexes.size() > MAX_INDEXES) {
+            String oldest = order.poll();
+            if (oldest == null) {
+                return; // Only indexes that are still being built are left
+            }
+            indexes.remove(oldest);
+        }
+    }
+
+    public static GifFrameIndex build(InputStream inputStream) throws IOException {
+        CountingInputStream in = new CountingInputStream(new BufferedInputStream(inputStream));
+
+        // Header and logical screen descriptor
+        byte[] screen = in.readNBytes(13);
+        if (screen.length < 13 || screen[0] != 'G' || screen[1] != 'I' || screen[2] != 'F') {
+            throw new IOException("Not a GIF file");
+        }
+        int packed = screen[10] & 0xFF;
+        byte[] colorTable = (packed & 0x80) != 0 ? readFully(in, 3 << ((packed & 7) + 1)) : new byte[0];
+        byte[] header = new byte[screen.length + colorTable.length];
+        System.arraycopy(screen, 0, header, 0, screen.length);
+        System.arraycopy(colorTable, 0, header, screen.length, colorTable.length);
+
+        List<Frame> frames = new ArrayList<>();
+        long frameStart = -1;
+        int block;
+        while ((block = in.read()) != -1) {
+            long blockStart = in.getCount() - 1;
+            if (block == 0x21) { // Extension
+                int label = readByte(in);
+                if (label == 0xF9 && frameStart < 0) {
+                    frameStart = blockStart; // The graphic control extension belongs to the next frame
+                }
+                skipSubBlocks(in);
+            } else if (block == 0x2C) { // Image descriptor
+                byte[] descriptor = readFully(in, 9);
+                int width = (descriptor[4] & 0xFF) | (descriptor[5] & 0xFF) << 8;
+                int height = (descriptor[6] & 0xFF) | (descriptor[7] & 0xFF) << 8;
+                int localPacked = descriptor[8] & 0xFF;
+                if ((localPacked & 0x80) != 0) {
+                    skipFully(in, 3L << ((localPacked & 7) + 1));
+                }
+                readByte(in); // LZW minimum code size
+                skipSubBlocks(in);
+                frames.add(new Frame(frameStart >= 0 ? frameStart : blockStart, in.getCount(), width, height));
+                frameStart = -1;
+            } else {
+                break; // Trailer (0x3B) or the end of the usable data
+            }
+        }
+        return new GifFrameIndex(header, frames);
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    public Dimension getFrameSize(int frame) {
+        Frame f = frames.get(frame);
+        return new Dimension(f.width(), f.height());
+    }
+
+    // Decode a single frame, the stream has to be at the start of the GIF
+    public BufferedImage readFrame(InputStream gif, int frame) throws IOException {
+        Frame f = frames.get(frame);
+        skipFully(gif, f.start());
+        byte[] data = readFully(gif, (int) (f.end() - f.start()));
+
+        byte[] single = new byte[header.length + data.length + 1];
+        System.arraycopy(header, 0, single, 0, header.length);
+        System.arraycopy(data, 0, single, header.length, data.length);
+        single[single.length - 1] = 0x3B; // Trailer
+        return ImageIO.read(new ByteArrayInputStream(single));
+    }
+
+    // Written to a temporary file first, so a reader never sees a half written index
+    private void save(File indexFile) throws IOException {
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(header.length);
+            out.write(header);
+            out.writeInt(frames.size());
+            for (Frame frame : frames) {
+                out.writeLong(frame.start());
+                out.writeLong(frame.end());
+                out.writeInt(frame.width());
+                out.writeInt(frame.height());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static GifFrameIndex load(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unknown frame index version");
+            }
+            byte[] header = new byte[in.readInt()];
+            in.readFully(header);
+            int count = in.readInt();
+            List<Frame> frames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                frames.add(new Frame(in.readLong(), in.readLong(), in.readInt(), in.readInt()));
+            }
+            return new GifFrameIndex(header, frames);
+        }
+    }
+
+    private static void skipSubBlocks(InputStream in) throws IOException {
+        int size;
+        while ((size = readByte(in)) != 0) {
+            skipFully(in, size);
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of GIF file");
+        }
+        return b;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Unexpected end of GIF file");
+        }
+        return bytes;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        in.skipNBytes(length);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
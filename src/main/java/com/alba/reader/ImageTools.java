@@ -1,7 +1,14 @@
 package com.alba.reader;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 
 public class ImageTools {
 
@@ -14,4 +21,82 @@ public class ImageTools {
         g2d.dispose();
         return outputImage;
     }
+
+    // Scale an image for display
+    public static BufferedImage scaleImage(BufferedImage image, int width, int height) {
+        BufferedImage scaledImage = new BufferedImage(
+                Math.max(1, width),
+                Math.max(1, height),
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+        );
+        Graphics2D g2d = scaledImage.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
+        g2d.dispose();
+        return scaledImage;
+    }
+
+    // Half the width and height, bilinear filtering at exactly half the size averages every 2x2 block
+    public static BufferedImage halveImage(BufferedImage image) {
+        return scaleImage(image, image.getWidth() / 2, image.getHeight() / 2);
+    }
+
+    // Decode an image at roughly the target size, whole rows and columns are skipped while decoding
+    // so a small version never needs the memory of the full image
+    public static BufferedImage readImage(InputStream inputStream, int targetWidth, int targetHeight) throws IOException {
+        return readImage(inputStream, null, targetWidth, targetHeight);
+    }
+
+    // Same as above, but only decodes the given region of the source image when the region is not null
+    public static BufferedImage readImage(InputStream inputStream, Rectangle region, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = region != null ? region.width : reader.getWidth(0);
+                int height = region != null ? region.height : reader.getHeight(0);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    param.setSourceRegion(region);
+                }
+                int subsampling = getSubsampling(width, height, targetWidth, targetHeight);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // The largest step that still keeps the decoded image at least as big as the target
+    public static int getSubsampling(int width, int height, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(width / targetWidth, height / targetHeight));
+    }
+
+    // Read the width and height from the image header without decoding the image
+    public static Dimension readDimensions(InputStream inputStream) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Fills the library list in the background. The library is read on a virtual thread and every comic is added
+// with a placeholder, a batch at a time, the page count and thumbnail are then resolved on virtual threads and
+// replace the placeholder as soon as they are ready. The EDT only ever adds a batch or swaps a single comic.
+public class LibraryLoader {
+
+    private static final int DEFAULT_THREADS = 8;
+    private static final int BATCH_SIZE = 500;
+
+    private final DefaultListModel<Comic> model;
+    private final int threads;
+    private volatile boolean cancelled;
+
+    public LibraryLoader(DefaultListModel<Comic> model) {
+        int libraryThreads = DEFAULT_THREADS;
+        try {
+            JSONObject settings = LocalAppDataUtil.getSettingsObject();
+            libraryThreads = settings.optInt("libraryThreads", DEFAULT_THREADS);
+        } catch (RuntimeException e) {
+            // No settings yet, use the default
+        }
+        this.model = model;
+        this.threads = Math.max(1, libraryThreads);
+    }
+
+    // Returns right away, the library is opened and read on the loader thread
+    public void start() {
+        Thread.ofVirtual().name("library-loader").start(() -> {
+            Map<String, JSONObject> library;
+            try {
+                library = LibraryStore.getInstance().getAll();
+            } catch (IOException e) {
+                System.err.println("Error reading library: " + e.getMessage());
+                return;
+            }
+
+            List<Comic> placeholders = new ArrayList<>();
+            List<Comic> batch = new ArrayList<>();
+            for (Map.Entry<String, JSONObject> entry : library.entrySet()) {
+                if (cancelled) {
+                    return;
+                }
+                Comic placeholder = ComicDisplay.createPlaceholder(entry.getKey(), entry.getValue());
+                placeholders.add(placeholder);
+                batch.add(placeholder);
+                if (batch.size() == BATCH_SIZE) {
+                    addToModel(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            addToModel(batch);
+
+            // The batches are queued on the EDT before any resolved comic, so every placeholder is in the list
+            // by the time it is replaced
+            resolveAll(placeholders, library);
+        });
+    }
+
+    private void addToModel(List<Comic> batch) {
+        if (!batch.isEmpty()) {
+            SwingUtilities.invokeLater(() -> model.addAll(batch));
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void resolveAll(List<Comic> placeholders, Map<String, JSONObject> library) {
+        long startTime = System.nanoTime();
+        // Only a few comics are opened at the same time, the disk is the limit and not the number of threads
+        Semaphore permits = new Semaphore(threads);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Comic placeholder : placeholders) {
+                if (cancelled) {
+                    break;
+                }
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        resolve(placeholder, library.get(placeholder.title));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Metrics.time("library.load", startTime);
+    }
+
+    private void resolve(Comic placeholder, JSONObject comicJson) {
+        if (cancelled) {
+            return;
+        }
+        Comic comic;
+        try {
+            comic = ComicDisplay.loadComic(placeholder.title, comicJson);
+        } catch (Exception e) {
+            System.err.println("Error loading library entry: " + placeholder.title + " - " + e.getMessage());
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            // The list may have changed in the meantime, look the placeholder up again
+            int index = model.indexOf(placeholder);
+            if (index >= 0) {
+                model.set(index, comic);
+            }
+        });
+    }
+}
@@ -0,0 +1,207 @@
+package com.alba.reader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The library, stored as an append-only journal with one JSON line per change. Updating a comic only appends
+// its record instead of rewriting the whole library. When the journal holds a lot of outdated lines it is
+// compacted into a new journal that replaces the old one in a single atomic move.
+// Appended lines are not forced to disk one by one, the OS writes them out. A line that was cut off by a crash is
+// skipped when the journal is read again.
+public final class LibraryStore {
+
+    private static final String STORE_PATH = "/Alba/ComicReader";
+    private static final String JOURNAL = "Library.journal";
+    private static final String LEGACY_LIST = "ComicList.json";
+    private static final int MIN_COMPACT_ENTRIES = 100;
+    private static LibraryStore instance;
+
+    private final File journalFile;
+    private final LinkedHashMap<String, JSONObject> records = new LinkedHashMap<>();
+    private FileChannel journal;
+    private int journalEntries;
+
+    public LibraryStore(File directory) throws IOException {
+        this.journalFile = new File(directory, JOURNAL);
+        if (journalFile.exists()) {
+            replay();
+        } else {
+            // First start with the journal, take over the library from ComicList.json
+            File legacyList = new File(directory, LEGACY_LIST);
+            if (legacyList.exists() && legacyList.length() > 0) {
+                importJson(legacyList);
+            }
+        }
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    public static synchronized LibraryStore getInstance() throws IOException {
+        if (instance == null) {
+            instance = new LibraryStore(LocalAppDataUtil.getDirectory(STORE_PATH));
+        }
+        return instance;
+    }
+
+    public synchronized boolean has(String key) {
+        return records.containsKey(key);
+    }
+
+    // A copy of the record, changes to it are only stored by calling put
+    public synchronized JSONObject get(String key) {
+        JSONObject record = records.get(key);
+        return record != null ? copy(record) : null;
+    }
+
+    // A single text field of a record, without copying the record. Null when there is no such record or field
+    public synchronized String getString(String key, String field) {
+        JSONObject record = records.get(key);
+        return record != null ? record.optString(field, null) : null;
+    }
+
+    // A copy of all records, the most recently updated one last
+    public synchronized Map<String, JSONObject> getAll() {
+        LinkedHashMap<String, JSONObject> all = new LinkedHashMap<>();
+        for (Map.Entry<String, JSONObject> record : records.entrySet()) {
+            all.put(record.getKey(), copy(record.getValue()));
+        }
+        return all;
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    // Store a record, an existing record with the same key is replaced and moves to the end
+    public synchronized void put(String key, JSONObject record) throws IOException {
+        records.remove(key);
+        records.put(key, copy(record));
+        JSONObject line = new JSONObject();
+        line.put("op", "put");
+        line.put("key", key);
+        line.put("record", record);
+        append(line);
+    }
+
+    public synchronized void remove(String key) throws IOException {
+        if (records.remove(key) == null) {
+            return;
+        }
+        JSONObject line = new JSONObject();
+        line.put("op", "remove");
+        line.put("key", key);
+        append(line);
+    }
+
+    // Add every comic of a ComicList.json style file to the library
+    public synchronized void importJson(File jsonFile) throws IOException {
+        JSONObject comicList;
+        try (FileReader reader = new FileReader(jsonFile)) {
+            comicList = new JSONObject(new JSONTokener(reader));
+        } catch (JSONException e) {
+            throw new IOException("Invalid comic list: " + jsonFile.getAbsolutePath(), e);
+        }
+        for (String key : comicList.keySet()) {
+            records.remove(key);
+            records.put(key, comicList.getJSONObject(key));
+        }
+        compact();
+    }
+
+    // Write every record once to a new journal and replace the old journal with it
+    public synchronized void compact() throws IOException {
+        closeJournal();
+        File temp = new File(journalFile.getParentFile(), JOURNAL + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, JSONObject> record : records.entrySet()) {
+                JSONObject line = new JSONObject();
+                line.put("op", "put");
+                line.put("key", record.getKey());
+                line.put("record", record.getValue());
+                write(channel, line);
+            }
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalEntries = records.size();
+    }
+
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.force(false);
+        }
+        closeJournal();
+    }
+
+    private void replay() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                if (text.isBlank()) {
+                    continue;
+                }
+                JSONObject line;
+                try {
+                    line = new JSONObject(text);
+                } catch (JSONException e) {
+                    // A line that was cut off while writing, everything before it is still valid
+                    System.err.println("Skipping damaged library journal line: " + e.getMessage());
+                    continue;
+                }
+                String key = line.getString("key");
+                records.remove(key);
+                if ("put".equals(line.getString("op"))) {
+                    records.put(key, line.getJSONObject("record"));
+                }
+                journalEntries++;
+            }
+        }
+    }
+
+    private void append(JSONObject line) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        write(journal, line);
+        journalEntries++;
+
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    // Only compact when most of the journal is outdated lines
+    private boolean needsCompaction() {
+        return journalEntries > MIN_COMPACT_ENTRIES && journalEntries > records.size() * 2;
+    }
+
+    private static JSONObject copy(JSONObject record) {
+        return new JSONObject(record.toString());
+    }
+
+    private static void write(FileChannel channel, JSONObject line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.alba.reader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Keeps the library up to date with the comics in the library folders. New and changed comics are ingested in the
+// background: the format is detected, the comic is added to the library with its metadata and page count and the
+// thumbnail is made. A file is only ingested once it has stopped changing, so comics that are still being copied
+// are left alone until the copy is done.
+public class LibraryWatcher {
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_MB_PER_SECOND = 0; // No limit
+    private static final long QUIET_MILLIS = 2000;
+    private static final List<String> EXTENSIONS = List.of(".cbz", ".cbr", ".nhlcomic");
+    private static LibraryWatcher instance;
+
+    private final List<Consumer<Comic>> listeners = new CopyOnWriteArrayList<>();
+    // Files that changed, with the time and size they had when they were last seen changing
+    private final Map<Path, long[]> pending = new ConcurrentHashMap<>();
+    private final Set<Path> ingesting = ConcurrentHashMap.newKeySet();
+    private final Set<Path> folders = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "library-watcher-debounce");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final long bytesPerSecond;
+    private WatchService watchService;
+    // The time at which the bytes read so far are paid off
+    private long budgetTime = System.nanoTime();
+
+    public LibraryWatcher(int threads, int mbPerSecond) {
+        this.permits = new Semaphore(Math.max(1, threads));
+        this.bytesPerSecond = Math.max(0, mbPerSecond) * 1024L * 1024L;
+    }
+
+    public static synchronized LibraryWatcher getInstance() {
+        if (instance == null) {
+            int threads = DEFAULT_THREADS;
+            int mbPerSecond = DEFAULT_MB_PER_SECOND;
+            try {
+                JSONObject settings = LocalAppDataUtil.getSettingsObject();
+                threads = settings.optInt("ingestThreads", DEFAULT_THREADS);
+                mbPerSecond = settings.optInt("ingestMBPerSecond", DEFAULT_MB_PER_SECOND);
+            } catch (RuntimeException e) {
+                // No settings yet, use the defaults
+            }
+            instance = new LibraryWatcher(threads, mbPerSecond);
+        }
+        return instance;
+    }
+
+    // Watch the library folders from the settings, calling this again does nothing. The folders are searched on the
+    // ingestion threads, so this returns right away
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+
+        Thread watcher = new Thread(this::watch, "library-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        scheduler.scheduleWithFixedDelay(this::ingestQuietFiles, QUIET_MILLIS, QUIET_MILLIS / 4, TimeUnit.MILLISECONDS);
+
+        JSONArray libraryFolders = new JSONArray();
+        try {
+            libraryFolders = LocalAppDataUtil.getSettingsObject().optJSONArray("libraryFolders");
+        } catch (RuntimeException e) {
+            // No settings yet, no folders
+        }
+        if (libraryFolders != null) {
+            for (int i = 0; i < libraryFolders.length(); i++) {
+                watchFolderInBackground(new File(libraryFolders.getString(i)));
+            }
+        }
+    }
+
+    // Add a library folder, it is stored in the settings and its comics are added to the library
+    public void addFolder(File folder) throws IOException {
+        JSONObject settings = LocalAppDataUtil.getSettingsObject();
+        JSONArray libraryFolders = settings.optJSONArray("libraryFolders");
+        if (libraryFolders == null) {
+            libraryFolders = new JSONArray();
+        }
+        String path = folder.getAbsolutePath();
+        for (int i = 0; i < libraryFolders.length(); i++) {
+            if (libraryFolders.getString(i).equals(path)) {
+                return;
+            }
+        }
+        libraryFolders.put(path);
+        settings.put("libraryFolders", libraryFolders);
+        LocalAppDataUtil.writeStringToFile("/Alba/ComicReader/Settings.json", settings.toString(4));
+
+        start();
+        watchFolderInBackground(folder);
+    }
+
+    // Called on an ingestion thread with every comic that was added to or changed in the library
+    public void addListener(Consumer<Comic> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Comic> listener) {
+        listeners.remove(listener);
+    }
+
+    private void watchFolderInBackground(File folder) {
+        executor.submit(() -> {
+            try {
+                watchFolder(folder);
+            } catch (IOException e) {
+                System.err.println("Error watching folder: " + folder.getAbsolutePath() + " - " + e.getMessage());
+            }
+        });
+    }
+
+    private void watchFolder(File folder) throws IOException {
+        if (!folder.isDirectory()) {
+            System.err.println("Library folder does not exist: " + folder.getAbsolutePath());
+            return;
+        }
+
+        // Register every directory and queue the comics that are not in the library yet or changed
+        Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (folders.add(dir)) {
+                    dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isComic(file) && !isInLibrary(file.toFile())) {
+                    submit(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                if (Files.isDirectory(path)) {
+                    // A new folder, possibly with comics in it already
+                    try {
+                        watchFolder(path.toFile());
+                    } catch (IOException e) {
+                        System.err.println("Error watching folder: " + path + " - " + e.getMessage());
+                    }
+                } else if (isComic(path)) {
+                    // Every change pushes the ingestion back, until the file is quiet
+                    pending.put(path, new long[]{System.currentTimeMillis(), path.toFile().length()});
+                }
+            }
+            if (!key.reset()) {
+                folders.remove(dir);
+            }
+        }
+    }
+
+    private void ingestQuietFiles() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Path, long[]> entry : pending.entrySet()) {
+            Path path = entry.getKey();
+            long[] seen = entry.getValue();
+            long size = path.toFile().length();
+            if (size != seen[1]) {
+                // Still growing without a watch event, look again later
+                pending.put(path, new long[]{now, size});
+            } else if (now - seen[0] >= QUIET_MILLIS) {
+                pending.remove(path);
+                submit(path);
+            }
+        }
+    }
+
+    private void submit(Path path) {
+        if (!ingesting.add(path)) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                permits.acquire();
+                try {
+                    ingest(path.toFile());
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ingesting.remove(path);
+            }
+        });
+    }
+
+    private void ingest(File file) throws InterruptedException {
+        if (!file.exists()) {
+            return;
+        }
+        throttle(file.length());
+        long startTime = System.nanoTime();
+        try {
+            // Opening the comic doesn't touch the library, the comic is added with its metadata, page count and page
+            // sizes in a single write without marking it as opened. The page headers of a ZIP based comic are read
+            // now, a CBR only has the sizes of the pages that were spooled, see RarPageIndex
+            ComicFormat format = FileTypeDetector.detect(file);
+            ComicBook comicBook = switch (format) {
+                case CBR -> ComicBookRar.open(file);
+                case NHL -> ComicBookNhl.open(file);
+                case CBZ -> ComicBookZip.open(file);
+                default -> null;
+            };
+            if (comicBook == null) {
+                return;
+            }
+
+            Dimension[] sizes = format == ComicFormat.CBR ? RarPageIndex.get(file).getKnownPageSizes() : comicBook.getPageSizes();
+            JSONObject record = new ComicListManager().addScannedComic(file, comicBook, sizes);
+            Comic comic = ComicDisplay.loadComic(file.getName(), record);
+            Metrics.time("library.ingest", startTime);
+
+            for (Consumer<Comic> listener : listeners) {
+                listener.accept(comic);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error ingesting comic: " + file.getAbsolutePath() + " - " + e.getMessage());
+        }
+    }
+
+    // Wait until reading this many bytes fits in the I/O budget
+    private void throttle(long bytes) throws InterruptedException {
+        if (bytesPerSecond == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Budget that wasn't used carries over for at most a second
+            budgetTime = Math.max(budgetTime, now - TimeUnit.SECONDS.toNanos(1));
+            // In double, bytes times nanoseconds per second overflows a long for files of a few GB
+            budgetTime += (long) ((double) bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+            waitNanos = budgetTime - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static boolean isComic(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInLibrary(File file) {
+        try {
+            return new ComicListManager().isUpToDate(file.getName(), file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -11,7 +11,8 @@ import java.util.List;
 
 public class LocalAppDataUtil {
 
-    private static final String LOCAL_APP_DATA = System.getenv("LOCALAPPDATA");
+    // The alba.appData property points the app data somewhere else, for example for benchmarks
+    private static final String LOCAL_APP_DATA = System.getProperty("alba.appData", System.getenv("LOCALAPPDATA"));
 
     public static void copyToLocalAppData(String sourcePath, String targetPath) throws IOException {
         File sourceFile = new File(sourcePath);
@@ -64,8 +65,6 @@ public class LocalAppDataUtil {
         File file = new File(targetDir, fileName);
         if (!file.exists()){
             Files.createFile(file.toPath());
-        } else{
-            System.out.println("File already exists: " + file.getAbsolutePath());
         }
     }
 
@@ -73,11 +72,18 @@ public class LocalAppDataUtil {
         File newDir = new File(LOCAL_APP_DATA + targetPath, dirName);
         if (!newDir.exists()) {
             Files.createDirectories(newDir.toPath());
-        } else {
-            System.out.println("Directory already exists: " + newDir.getAbsolutePath());
         }
     }
 
+    // Get a directory in local app data, the directory is created when it does not exist yet
+    public static File getDirectory(String targetPath) throws IOException {
+        File dir = new File(LOCAL_APP_DATA + targetPath);
+        if (!dir.exists()) {
+            Files.createDirectories(dir.toPath());
+        }
+        return dir;
+    }
+
     public static File getFile(String fileName, String targetPath) throws IOException {
         File file = new File(LOCAL_APP_DATA + targetPath, fileName);
         if (!file.exists()) {
@@ -131,7 +137,15 @@ public class LocalAppDataUtil {
             writeStringToFile("/Alba/ComicReader/Settings.json", """
                     {
                         "darkMode": true,
-                        "language": "English"
+                        "language": "English",
+                        "pageCacheMB": 512,
+                        "offHeapPages": false,
+                        "prefetchAhead": 3,
+                        "prefetchBehind": 1,
+                        "libraryThreads": 8,
+                        "libraryFolders": [],
+                        "ingestThreads": 4,
+                        "ingestMBPerSecond": 0
                     }
                     """);
         }
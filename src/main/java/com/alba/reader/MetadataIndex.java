@@ -0,0 +1,370 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Inverted index over the metadata of the comics in the library, used by the search box of the library window.
+// Every word of the indexed fields points to the comics it appears in, both on its own and prefixed with the
+// field name. The words of each comic are saved to disk so the index doesn't have to be built on every start.
+public class MetadataIndex {
+
+    private static final String INDEX_PATH = "/Alba/ComicReader";
+    private static final String INDEX_FILE = "MetadataIndex.idx";
+    private static final int VERSION = 1;
+    private static final long SAVE_DELAY_MS = 10_000;
+    private static final String[] FIELDS = {"Series", "Title", "Writer", "Publisher", "Tags", "Genre", "Penciller", "Characters"};
+    private static volatile MetadataIndex instance;
+    // Updates made while the index is brought up to date with the library, applied once it is loaded. Before that
+    // the library itself has every change
+    private static final Map<String, JSONObject> pending = new LinkedHashMap<>();
+    private static final Object pendingLock = new Object();
+    private static boolean syncing;
+
+    private final File indexFile;
+    private final TreeMap<String, Set<String>> postings = new TreeMap<>();
+    private final TreeMap<Integer, Set<String>> years = new TreeMap<>();
+    private final Map<String, Document> documents = new HashMap<>();
+    private ScheduledExecutorService saver;
+    private boolean dirty;
+
+    // The indexed words of a comic, the hash tells if the metadata changed since the comic was indexed
+    private record Document(int hash, List<String> words, int year) {
+    }
+
+    public MetadataIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    // The index of the library, loaded from disk and brought up to date with the library on first use
+    public static synchronized MetadataIndex getInstance() throws IOException {
+        if (instance == null) {
+            long startTime = System.nanoTime();
+            MetadataIndex index = new MetadataIndex(new File(LocalAppDataUtil.getDirectory(INDEX_PATH), INDEX_FILE));
+            if (index.indexFile.exists()) {
+                try {
+                    index.load();
+                } catch (IOException e) {
+                    System.err.println("Error reading metadata index, rebuilding it - " + e.getMessage());
+                    index.clear();
+                }
+            }
+            synchronized (pendingLock) {
+                syncing = true;
+            }
+            try {
+                index.sync(LibraryStore.getInstance().getAll());
+            } catch (IOException | RuntimeException e) {
+                synchronized (pendingLock) {
+                    syncing = false;
+                    pending.clear();
+                }
+                throw e;
+            }
+            synchronized (pendingLock) {
+                syncing = false;
+                for (Map.Entry<String, JSONObject> update : pending.entrySet()) {
+                    index.update(update.getKey(), update.getValue());
+                }
+                pending.clear();
+                instance = index;
+            }
+            Metrics.time("metadataindex.load", startTime);
+        }
+        return instance;
+    }
+
+    // The index when it is already loaded, null while it is still being loaded. Never waits for the index
+    public static MetadataIndex getIfLoaded() {
+        return instance;
+    }
+
+    // Index a changed comic without waiting for the index to be loaded, safe to call on the EDT
+    public static void updateLater(String key, JSONObject record) {
+        MetadataIndex index = instance;
+        if (index == null) {
+            synchronized (pendingLock) {
+                index = instance;
+                if (index == null) {
+                    if (syncing) {
+                        pending.put(key, record);
+                    }
+                    return;
+                }
+            }
+        }
+        index.update(key, record);
+    }
+
+    // Index the current metadata of a comic, a comic that is already indexed with the same metadata is skipped
+    public synchronized void update(String key, JSONObject record) {
+        JSONObject metadata = record.optJSONObject("metadata");
+        int hash = metadata != null ? metadata.toString().hashCode() : 0;
+        Document existing = documents.get(key);
+        if (existing != null && existing.hash() == hash) {
+            return;
+        }
+        remove(key);
+        add(key, createDocument(key, metadata, hash));
+        scheduleSave();
+    }
+
+    public synchronized void remove(String key) {
+        Document document = documents.remove(key);
+        if (document == null) {
+            return;
+        }
+        for (String word : document.words()) {
+            Set<String> keys = postings.get(word);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+        if (document.year() > 0) {
+            Set<String> keys = years.get(document.year());
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    years.remove(document.year());
+                }
+            }
+        }
+        scheduleSave();
+    }
+
+    // Find the comics that match every term of the query. A term is a word in any field, "field:word" for a word
+    // in one field or "year:1990" and "year:1990-1995" for a year or range of years. The last term also matches
+    // words that start with it, so results show up while typing.
+    public synchronized Set<String> search(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.trim().toLowerCase().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String last = terms.removeLast();
+
+        List<Set<String>> matches = new ArrayList<>();
+        for (String term : terms) {
+            Set<String> match = match(term, false);
+            if (match.isEmpty()) {
+                return Collections.emptySet();
+            }
+            matches.add(match);
+        }
+        if (matches.isEmpty()) {
+            return match(last, true);
+        }
+
+        // Start from the smallest set so the intersection does the least work
+        matches.sort(Comparator.comparingInt(Set::size));
+        Set<String> result = new HashSet<>(matches.getFirst());
+        for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+            result.retainAll(matches.get(i));
+        }
+
+        // A short last term can start thousands of words, then checking the comics that are left is cheaper
+        // than collecting every comic with one of those words
+        if (!last.startsWith("year:") && countPrefixMatches(last, result.size()) >= result.size()) {
+            result.removeIf(key -> !hasWordStartingWith(documents.get(key), last));
+        } else {
+            result.retainAll(match(last, true));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    // Write the index to disk when it changed since it was last written
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File temp = new File(indexFile.getParentFile(), INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(documents.size());
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                Document document = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(document.hash());
+                out.writeInt(document.year());
+                out.writeInt(document.words().size());
+                for (String word : document.words()) {
+                    out.writeUTF(word);
+                }
+            }
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private Set<String> match(String term, boolean prefix) {
+        if (term.startsWith("year:")) {
+            return matchYears(term.substring(5));
+        }
+        Set<String> exact = postings.getOrDefault(term, Collections.emptySet());
+        if (!prefix) {
+            // Not copied, the sets are only read while the index is locked
+            return Collections.unmodifiableSet(exact);
+        }
+        Set<String> result = new HashSet<>(exact);
+        for (Set<String> keys : postings.subMap(term, false, term + Character.MAX_VALUE, false).values()) {
+            result.addAll(keys);
+        }
+        return result;
+    }
+
+    // The number of comics with a word that starts with the prefix, counted up to the limit
+    private int countPrefixMatches(String prefix, int limit) {
+        int count = 0;
+        for (Set<String> keys : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            count += keys.size();
+            if (count >= limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasWordStartingWith(Document document, String prefix) {
+        for (String word : document.words()) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> matchYears(String range) {
+        Set<String> result = new HashSet<>();
+        String[] bounds = range.split("-", 2);
+        try {
+            int from = bounds[0].isEmpty() ? Integer.MIN_VALUE : Integer.parseInt(bounds[0]);
+            int to = bounds.length < 2 ? from : bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+            for (Set<String> keys : years.subMap(from, true, to, true).values()) {
+                result.addAll(keys);
+            }
+        } catch (NumberFormatException e) {
+            // Not a year, nothing matches
+        }
+        return result;
+    }
+
+    private void sync(Map<String, JSONObject> library) {
+        // Forget comics that are no longer in the library, then index the comics that are new or changed
+        for (String key : new ArrayList<>(documents.keySet())) {
+            if (!library.containsKey(key)) {
+                remove(key);
+            }
+        }
+        for (Map.Entry<String, JSONObject> entry : library.entrySet()) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Document createDocument(String key, JSONObject metadata, int hash) {
+        Set<String> words = new LinkedHashSet<>();
+
+        // The file name is always searchable, also for comics without metadata
+        words.addAll(tokenize(key));
+
+        int year = 0;
+        if (metadata != null) {
+            ComicInfo comicInfo = ComicInfo.fromJSON(metadata);
+            Map<String, String> fields = comicInfo.toFields();
+            for (String field : FIELDS) {
+                String value = fields.get(field);
+                if (value == null) {
+                    continue;
+                }
+                String fieldName = field.toLowerCase();
+                for (String word : tokenize(value)) {
+                    words.add(word);
+                    words.add(fieldName + ":" + word);
+                }
+            }
+            year = Math.max(0, comicInfo.year());
+        }
+        return new Document(hash, new ArrayList<>(words), year);
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private void add(String key, Document document) {
+        documents.put(key, document);
+        for (String word : document.words()) {
+            postings.computeIfAbsent(word, w -> new HashSet<>()).add(key);
+        }
+        if (document.year() > 0) {
+            years.computeIfAbsent(document.year(), y -> new HashSet<>()).add(key);
+        }
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported metadata index version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int hash = in.readInt();
+                int year = in.readInt();
+                int wordCount = in.readInt();
+                List<String> words = new ArrayList<>(wordCount);
+                for (int j = 0; j < wordCount; j++) {
+                    words.add(in.readUTF());
+                }
+                add(key, new Document(hash, words, year));
+            }
+        }
+    }
+
+    private void clear() {
+        postings.clear();
+        years.clear();
+        documents.clear();
+    }
+
+    // Changes are written to disk a little later, so a burst of updates only writes the index once
+    private void scheduleSave() {
+        dirty = true;
+        if (saver == null) {
+            saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metadata-index-saver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            saver.scheduleWithFixedDelay(() -> {
+                try {
+                    save();
+                } catch (IOException e) {
+                    System.err.println("Error writing metadata index: " + e.getMessage());
+                }
+            }, SAVE_DELAY_MS, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
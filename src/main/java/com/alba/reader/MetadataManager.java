@@ -1,7 +1,8 @@
 package com.alba.reader;
 import org.json.*;
+
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
-import java.util.*;
 
 public class MetadataManager {
     InputStream inputStream;
@@ -15,8 +16,15 @@ public class MetadataManager {
     }
 
     public JSONObject XMLtoMetadata() {
-        Scanner scanner = new Scanner(inputStream).useDelimiter("\\A");
-        String xml = scanner.hasNext() ? scanner.next() : "";
-        return XML.toJSONObject(xml);
+        try {
+            return readComicInfo().toJSON();
+        } catch (XMLStreamException e) {
+            System.err.println("Error reading metadata: " + e.getMessage());
+            return new JSONObject();
+        }
+    }
+
+    public ComicInfo readComicInfo() throws XMLStreamException {
+        return ComicInfo.parse(inputStream);
     }
 }
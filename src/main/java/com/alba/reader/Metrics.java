@@ -0,0 +1,291 @@
+package com.alba.reader;
+
+import jdk.jfr.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and histograms of the loading pipeline. Every metric is registered over JMX under com.alba.reader as soon
+// as it is first used, timings are also recorded as JFR events and the counters are sampled into JFR every second.
+// Recording a value is a few atomic operations, so metrics can stay in the hot paths.
+public final class Metrics {
+
+    private static final String DOMAIN = "com.alba.reader";
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    static {
+        FlightRecorder.addPeriodicEvent(CounterEvent.class, Metrics::emitCounters);
+    }
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> register(new Counter(n), "Counter", n));
+    }
+
+    public static Histogram histogram(String name, String unit) {
+        return histograms.computeIfAbsent(name, n -> register(new Histogram(n, unit), "Histogram", n));
+    }
+
+    // A histogram of durations in nanoseconds
+    public static Histogram timer(String name) {
+        return histogram(name, Histogram.NANOSECONDS);
+    }
+
+    // Record the time since start, taken from System.nanoTime, in a timer
+    public static void time(String name, long start) {
+        timer(name).record(System.nanoTime() - start);
+    }
+
+    public static Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    public static Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    private static <T> T register(T metric, String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metric, new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (JMException | RuntimeException e) {
+            // Metrics still work without JMX
+            System.err.println("Error registering metric: " + name + " - " + e.getMessage());
+        }
+        return metric;
+    }
+
+    private static void emitCounters() {
+        for (Counter counter : counters.values()) {
+            CounterEvent event = new CounterEvent();
+            event.metric = counter.name;
+            event.count = counter.getCount();
+            event.commit();
+        }
+    }
+
+    public interface CounterMXBean {
+        String getName();
+
+        long getCount();
+    }
+
+    public static final class Counter implements CounterMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + getCount();
+        }
+    }
+
+    public interface HistogramMXBean {
+        String getName();
+
+        String getUnit();
+
+        long getCount();
+
+        double getMean();
+
+        long getMin();
+
+        long getMax();
+
+        long getP50();
+
+        long getP95();
+
+        long getP99();
+    }
+
+    // Values are counted in buckets of powers of two, percentiles are the upper bound of their bucket
+    public static final class Histogram implements HistogramMXBean {
+        public static final String NANOSECONDS = "ns";
+        public static final String BYTES = "bytes";
+
+        private final String name;
+        private final String unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1));
+            count.increment();
+            sum.add(value);
+            min.accumulateAndGet(value, Math::min);
+            max.accumulateAndGet(value, Math::max);
+
+            if (NANOSECONDS.equals(unit)) {
+                TimingEvent event = new TimingEvent();
+                if (event.shouldCommit()) {
+                    event.metric = name;
+                    event.elapsed = value;
+                    event.commit();
+                }
+            } else {
+                SampleEvent event = new SampleEvent();
+                if (event.shouldCommit()) {
+                    event.metric = name;
+                    event.value = value;
+                    event.unit = unit;
+                    event.commit();
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getUnit() {
+            return unit;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        @Override
+        public long getMin() {
+            return count.sum() == 0 ? 0 : min.get();
+        }
+
+        @Override
+        public long getMax() {
+            return max.get();
+        }
+
+        @Override
+        public long getP50() {
+            return percentile(0.50);
+        }
+
+        @Override
+        public long getP95() {
+            return percentile(0.95);
+        }
+
+        @Override
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        private long percentile(double fraction) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * fraction);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(max.get(), i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": count " + getCount() + ", mean " + Math.round(getMean()) + " " + unit + ", p50 " + getP50()
+                    + ", p99 " + getP99() + ", max " + getMax();
+        }
+    }
+
+    @Name("com.alba.reader.Timing")
+    @Label("Timing")
+    @Category("Alba Comic Reader")
+    @StackTrace(false)
+    static class TimingEvent extends Event {
+        @Label("Metric")
+        String metric;
+
+        // Events have a duration of their own, the time is recorded after the fact so it goes in its own field
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("com.alba.reader.Sample")
+    @Label("Sample")
+    @Category("Alba Comic Reader")
+    @StackTrace(false)
+    static class SampleEvent extends Event {
+        @Label("Metric")
+        String metric;
+
+        @Label("Value")
+        long value;
+
+        @Label("Unit")
+        String unit;
+    }
+
+    @Name("com.alba.reader.Counter")
+    @Label("Counter")
+    @Category("Alba Comic Reader")
+    @StackTrace(false)
+    @Period("1 s")
+    static class CounterEvent extends Event {
+        @Label("Metric")
+        String metric;
+
+        @Label("Count")
+        long count;
+    }
+}
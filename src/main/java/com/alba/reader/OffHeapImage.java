@@ -0,0 +1,98 @@
+package com.alba.reader;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+// Pixels of a decoded page kept in direct memory outside the Java heap, so cached pages don't have to be
+// moved around by the garbage collector. The memory comes from a PixelSlab in chunks, releasing the image
+// hands the chunks back to the slab for the next page.
+public class OffHeapImage {
+
+    private static final int CHUNK_INTS = PixelSlab.CHUNK_BYTES / 4;
+
+    private final PixelSlab slab;
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private ByteBuffer[] chunks;
+
+    private OffHeapImage(PixelSlab slab, int width, int height, boolean alpha, ByteBuffer[] chunks) {
+        this.slab = slab;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.chunks = chunks;
+    }
+
+    // Copy the image into the slab, null when the slab has no room left for it
+    public static OffHeapImage of(BufferedImage image, PixelSlab slab) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer[] chunks = slab.allocate((long) width * height * 4);
+        if (chunks == null) {
+            return null;
+        }
+        OffHeapImage offHeapImage = new OffHeapImage(slab, width, height, image.getColorModel().hasAlpha(), chunks);
+
+        // Images that already store their pixels as ints are copied in one go
+        if ((image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt data
+                && data.getNumBanks() == 1 && data.getSize() == (long) width * height) {
+            offHeapImage.write(0, data.getData(), data.getSize());
+            return offHeapImage;
+        }
+
+        // Copy row by row so the heap only ever holds a single row of the page
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            offHeapImage.write((long) y * width, row, width);
+        }
+        return offHeapImage;
+    }
+
+    // Copy the pixels back into a heap image to draw it, the copy only lives as long as the page is shown.
+    // Returns null when the image was released before it could be copied
+    public synchronized BufferedImage toImage() {
+        if (chunks == null) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int offset = 0;
+        for (int i = 0; offset < data.length; i++) {
+            int length = Math.min(CHUNK_INTS, data.length - offset);
+            chunks[i].asIntBuffer().get(data, offset, length);
+            offset += length;
+        }
+        return image;
+    }
+
+    public long size() {
+        return (long) width * height * 4;
+    }
+
+    // Hand the chunks back to the slab, the image can't be used anymore afterwards
+    public synchronized void release() {
+        if (chunks != null) {
+            slab.release(chunks);
+            chunks = null;
+        }
+    }
+
+    // Write pixels starting at the given pixel, across the chunks they fall in
+    private void write(long position, int[] pixels, int length) {
+        int offset = 0;
+        while (offset < length) {
+            int chunk = (int) (position / CHUNK_INTS);
+            int start = (int) (position % CHUNK_INTS);
+            int count = Math.min(CHUNK_INTS - start, length - offset);
+            IntBuffer ints = chunks[chunk].asIntBuffer();
+            ints.put(start, pixels, offset, count);
+            offset += count;
+            position += count;
+        }
+    }
+}
@@ -24,6 +24,10 @@ public class OpenMenu {
         JMenuItem openMetadataItem = new JMenuItem(lang.getString("openMetadata"));
         openMetadataItem.addActionListener(e -> MetadataDialog.MetadataDialog(comicReader.getCurrentComic()));
         openMenu.add(openMetadataItem);
+
+        JMenuItem addLibraryFolderItem = new JMenuItem(lang.getString("addLibraryFolder"));
+        addLibraryFolderItem.addActionListener(e -> comicReader.addLibraryFolder());
+        openMenu.add(addLibraryFolderItem);
     }
 
     public JMenu getMenu() {
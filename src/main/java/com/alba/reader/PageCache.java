@@ -0,0 +1,230 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Decoded pages shared by every opened comic. Pages are kept until the byte budget is reached,
+// after that the least recently used pages are dropped.
+public class PageCache {
+
+    private static final long DEFAULT_BUDGET_MB = 512;
+    // Pages are copied into the slab before older pages are evicted, the headroom leaves room for a few of them
+    private static final long SLAB_HEADROOM = 128L * 1024 * 1024;
+    private static PageCache instance;
+
+    // The comic is the id of the book, see ComicBook.id. The subsampling the page was decoded with, 1 is the full page. Pages that are scaled for display
+    // are stored with the width they were scaled to instead
+    public record Key(String comic, int page, int subsampling, int scaledWidth) {
+        public Key(String comic, int page, int subsampling) {
+            this(comic, page, subsampling, 0);
+        }
+
+        public static Key scaled(String comic, int page, int scaledWidth) {
+            return new Key(comic, page, 0, scaledWidth);
+        }
+    }
+
+    // A cached page is either kept on the heap or, with offHeapPages enabled, in the off-heap slab
+    private record CachedPage(BufferedImage image, OffHeapImage offHeap) {
+        BufferedImage toImage() {
+            return image != null ? image : offHeap.toImage();
+        }
+
+        long size() {
+            return image != null ? sizeOf(image) : offHeap.size();
+        }
+
+        void release() {
+            if (offHeap != null) {
+                offHeap.release();
+            }
+        }
+    }
+
+    private final LinkedHashMap<Key, CachedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final boolean offHeap;
+    private final PixelSlab slab;
+    private long budget;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PageCache(long budget) {
+        this(budget, false);
+    }
+
+    public PageCache(long budget, boolean offHeap) {
+        this.budget = budget;
+        this.offHeap = offHeap;
+        this.slab = offHeap ? new PixelSlab(budget + SLAB_HEADROOM) : null;
+    }
+
+    public static synchronized PageCache getInstance() {
+        if (instance == null) {
+            long budgetMb = DEFAULT_BUDGET_MB;
+            boolean offHeapPages = false;
+            try {
+                JSONObject settings = LocalAppDataUtil.getSettingsObject();
+                budgetMb = settings.optLong("pageCacheMB", DEFAULT_BUDGET_MB);
+                offHeapPages = settings.optBoolean("offHeapPages", false);
+            } catch (RuntimeException e) {
+                // No settings yet, use the defaults
+            }
+            instance = new PageCache(budgetMb * 1024 * 1024, offHeapPages);
+        }
+        return instance;
+    }
+
+    // Get a page at about the target size, decoding it when it is not cached. A target of 0 is the full page
+    public BufferedImage getPage(ComicBook comicBook, int index, int targetWidth, int targetHeight) {
+        ComicPage page = comicBook.getPage(index);
+        int subsampling = getSubsampling(comicBook, index, targetWidth, targetHeight);
+        Key key = new Key(comicBook.id(), index, subsampling);
+        BufferedImage image = get(key);
+        if (image == null) {
+            // Decode outside the lock so other pages can be read from the cache meanwhile
+            image = subsampling > 1 ? page.image(targetWidth, targetHeight) : page.image();
+            if (image != null) {
+                put(key, image);
+            }
+        }
+        return image;
+    }
+
+    // Get a page at about the target size only when it is cached. Never reads the archive, not even the image header,
+    // so it is safe to call on the EDT
+    public BufferedImage getCachedPage(ComicBook comicBook, int index, int targetWidth, int targetHeight) {
+        if (targetWidth > 0 && targetHeight > 0 && !comicBook.hasPageSize(index)) {
+            return null;
+        }
+        return get(new Key(comicBook.id(), index, getSubsampling(comicBook, index, targetWidth, targetHeight)));
+    }
+
+    private static int getSubsampling(ComicBook comicBook, int index, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        Dimension pageSize = comicBook.getPageSize(index);
+        return ImageTools.getSubsampling(pageSize.width, pageSize.height, targetWidth, targetHeight);
+    }
+
+    public BufferedImage get(Key key) {
+        CachedPage page;
+        synchronized (this) {
+            page = pages.get(key);
+            if (page == null) {
+                misses++;
+                Metrics.counter("pagecache.misses").increment();
+                return null;
+            }
+            hits++;
+            Metrics.counter("pagecache.hits").increment();
+        }
+        // Off-heap pages are copied outside the lock so other pages can be looked up meanwhile. A page that is
+        // evicted before the copy is made comes back as null, like a miss
+        return page.toImage();
+    }
+
+    public void put(Key key, BufferedImage image) {
+        // Copy the pixels off-heap before taking the lock, a page the slab has no room for stays on the heap
+        OffHeapImage offHeapImage = offHeap ? OffHeapImage.of(image, slab) : null;
+        CachedPage page = offHeapImage != null ? new CachedPage(null, offHeapImage) : new CachedPage(image, null);
+        synchronized (this) {
+            long pageSize = page.size();
+            if (pageSize > budget) {
+                page.release();
+                return; // Would push everything else out
+            }
+            CachedPage previous = pages.put(key, page);
+            if (previous != null) {
+                size -= previous.size();
+                previous.release();
+            }
+            size += pageSize;
+            evict();
+        }
+    }
+
+    public synchronized void remove(String comic) {
+        Iterator<Map.Entry<Key, CachedPage>> iterator = pages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, CachedPage> entry = iterator.next();
+            if (entry.getKey().comic().equals(comic)) {
+                size -= entry.getValue().size();
+                entry.getValue().release();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        pages.values().forEach(CachedPage::release);
+        pages.clear();
+        size = 0;
+    }
+
+    // The off-heap slab keeps the size it was created with, pages it has no room for are kept on the heap
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, CachedPage>> iterator = pages.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            Map.Entry<Key, CachedPage> eldest = iterator.next();
+            size -= eldest.getValue().size();
+            eldest.getValue().release();
+            iterator.remove();
+            evictions++;
+            Metrics.counter("pagecache.evictions").increment();
+        }
+    }
+
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PageCache: " + pages.size() + " pages, " + size / (1024 * 1024) + "/" + budget / (1024 * 1024)
+                + " MB, " + hits + " hits, " + misses + " misses, " + evictions + " evictions"
+                + (slab != null ? ", " + slab.getAllocatedBytes() / (1024 * 1024) + " MB direct memory" : "");
+    }
+}
@@ -0,0 +1,106 @@
+package com.alba.reader;
+
+import org.json.JSONObject;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Decodes and scales the pages around the current page in the background, so turning a page only has to
+// look the page up in the PageCache. Every page change starts a new generation, work for an older
+// generation is dropped.
+public class PagePrefetcher {
+
+    private static final int DEFAULT_AHEAD = 3;
+    private static final int DEFAULT_BEHIND = 1;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private final int ahead;
+    private final int behind;
+    private volatile long generation;
+
+    public PagePrefetcher() {
+        int pagesAhead = DEFAULT_AHEAD;
+        int pagesBehind = DEFAULT_BEHIND;
+        try {
+            JSONObject settings = LocalAppDataUtil.getSettingsObject();
+            pagesAhead = settings.optInt("prefetchAhead", DEFAULT_AHEAD);
+            pagesBehind = settings.optInt("prefetchBehind", DEFAULT_BEHIND);
+        } catch (RuntimeException e) {
+            // No settings yet, use the defaults
+        }
+        this.ahead = Math.max(0, pagesAhead);
+        this.behind = Math.max(0, pagesBehind);
+    }
+
+    public PagePrefetcher(int ahead, int behind) {
+        this.ahead = Math.max(0, ahead);
+        this.behind = Math.max(0, behind);
+    }
+
+    // Prefetch the pages around the current page at the current zoom, the closest pages go first
+    public synchronized void prefetch(ComicBook comicBook, int currentPage, float zoomFactor) {
+        cancel();
+        long thisGeneration = generation;
+        for (int distance = 1; distance <= Math.max(ahead, behind); distance++) {
+            if (distance <= ahead && currentPage + distance < comicBook.getPageCount()) {
+                submit(comicBook, currentPage + distance, zoomFactor, thisGeneration);
+            }
+            if (distance <= behind && currentPage - distance >= 0) {
+                submit(comicBook, currentPage - distance, zoomFactor, thisGeneration);
+            }
+        }
+    }
+
+    // Drop all outstanding work, for example when jumping to another part of the comic
+    public synchronized void cancel() {
+        generation++;
+        // Not interrupted, an interrupt would close the file channel the archive is shared through
+        tasks.forEach(task -> task.cancel(false));
+        tasks.clear();
+    }
+
+    // Run a single task on the prefetch threads outside of any generation, like decoding the page that is turned to
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    public int getAhead() {
+        return ahead;
+    }
+
+    public int getBehind() {
+        return behind;
+    }
+
+    private void submit(ComicBook comicBook, int index, float zoomFactor, long taskGeneration) {
+        tasks.add(executor.submit(() -> {
+            if (taskGeneration != generation) {
+                return;
+            }
+            PageCache cache = PageCache.getInstance();
+            Dimension pageSize = comicBook.getPageSize(index);
+            int width = (int) (pageSize.width * zoomFactor);
+            int height = (int) (pageSize.height * zoomFactor);
+            BufferedImage image = cache.getPage(comicBook, index, width, height);
+            if (image == null || taskGeneration != generation) {
+                return;
+            }
+            // Zoomed in pages are drawn in tiles, only zoomed out pages are scaled in full
+            PageCache.Key key = PageCache.Key.scaled(comicBook.id(), index, width);
+            if (zoomFactor <= 1.0f && cache.get(key) == null) {
+                cache.put(key, ImageTools.scaleImage(image, width, height));
+            }
+        }));
+    }
+}
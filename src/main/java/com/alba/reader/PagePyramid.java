@@ -0,0 +1,61 @@
+package com.alba.reader;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Mipmap levels of a page, every level is half the size of the one before it. Zooming picks the smallest
+// level that is still at least as big as the wanted size, so the final resample only has to shrink a little.
+// The levels are made in the background the first time the page is zoomed out.
+public class PagePyramid {
+
+    private static final int MIN_LEVEL_WIDTH = 256;
+    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final List<BufferedImage> levels = new CopyOnWriteArrayList<>();
+    private boolean building;
+
+    public PagePyramid(BufferedImage source) {
+        levels.add(source);
+    }
+
+    public BufferedImage getSource() {
+        return levels.getFirst();
+    }
+
+    // Get the best level made so far for the target width, the missing levels are started in the background
+    public BufferedImage getLevel(int targetWidth) {
+        BufferedImage best = levels.getFirst();
+        for (BufferedImage level : levels) {
+            if (level.getWidth() >= targetWidth) {
+                best = level;
+            } else {
+                break;
+            }
+        }
+        if (targetWidth < best.getWidth() / 2) {
+            startBuilding();
+        }
+        return best;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    private synchronized void startBuilding() {
+        if (building) {
+            return;
+        }
+        building = true;
+        executor.submit(() -> {
+            BufferedImage level = levels.getLast();
+            while (level.getWidth() / 2 >= MIN_LEVEL_WIDTH) {
+                level = ImageTools.halveImage(level);
+                levels.add(level);
+            }
+        });
+    }
+}
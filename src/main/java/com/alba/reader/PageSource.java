@@ -0,0 +1,35 @@
+package com.alba.reader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+@FunctionalInterface
+public interface PageSource {
+
+    // Open the raw (still encoded) bytes of the page
+    InputStream open() throws IOException;
+
+    // Decode the full page, only called when the page is actually needed
+    default BufferedImage read() throws IOException {
+        try (InputStream is = open()) {
+            return ImageIO.read(is);
+        }
+    }
+
+    // Decode the page at roughly the target size, used for thumbnails and zoomed out pages
+    default BufferedImage read(int targetWidth, int targetHeight) throws IOException {
+        try (InputStream is = open()) {
+            return ImageTools.readImage(is, targetWidth, targetHeight);
+        }
+    }
+
+    // Read only the image header to get the page size without decoding the pixels
+    default Dimension size() throws IOException {
+        try (InputStream is = open()) {
+            return ImageTools.readDimensions(is);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.alba.reader;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Shows the current page. Zoomed out the whole scaled page is drawn, zoomed in only the tiles that
+// intersect the visible part of the page are scaled from the source (or the nearest mipmap level)
+// and kept in a small tile cache, so the memory used depends on the screen size and not on the zoom.
+public class PageView extends JComponent {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 128;
+
+    private PagePyramid pyramid;
+    private BufferedImage scaledPage;
+    private int pageWidth;
+    private int pageHeight;
+    private float previewScale = 1.0f;
+
+    private final Map<Point, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Point, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    // Show a page that was already scaled in full
+    public void setPage(BufferedImage scaledPage) {
+        this.pyramid = null;
+        this.scaledPage = scaledPage;
+        this.pageWidth = scaledPage.getWidth();
+        this.pageHeight = scaledPage.getHeight();
+        this.previewScale = 1.0f;
+        tiles.clear();
+        revalidate();
+        repaint();
+    }
+
+    // Show a page that is rendered in tiles at the given zoom, the zoom is relative to the full page size
+    public void setPage(PagePyramid pyramid, Dimension pageSize, float zoomFactor) {
+        this.pyramid = pyramid;
+        this.scaledPage = null;
+        this.pageWidth = Math.max(1, (int) (pageSize.width * zoomFactor));
+        this.pageHeight = Math.max(1, (int) (pageSize.height * zoomFactor));
+        this.previewScale = 1.0f;
+        tiles.clear();
+        revalidate();
+        repaint();
+    }
+
+    // Stretch what is shown by the given factor until the page is set again at the new zoom,
+    // this only redraws the existing pixels so it is cheap enough for every wheel notch
+    public void setPreviewScale(float previewScale) {
+        this.previewScale = previewScale;
+        revalidate();
+        repaint();
+    }
+
+    public void clear() {
+        previewScale = 1.0f;
+        pyramid = null;
+        scaledPage = null;
+        pageWidth = 0;
+        pageHeight = 0;
+        tiles.clear();
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(getDisplayWidth(), getDisplayHeight());
+    }
+
+    private int getDisplayWidth() {
+        return (int) (pageWidth * previewScale);
+    }
+
+    private int getDisplayHeight() {
+        return (int) (pageHeight * previewScale);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        // Center the page when it is smaller than the view
+        int displayWidth = getDisplayWidth();
+        int displayHeight = getDisplayHeight();
+        int offsetX = Math.max(0, (getWidth() - displayWidth) / 2);
+        int offsetY = Math.max(0, (getHeight() - displayHeight) / 2);
+
+        if (previewScale != 1.0f) {
+            BufferedImage preview = scaledPage != null ? scaledPage : pyramid != null ? pyramid.getLevel(displayWidth) : null;
+            if (preview != null) {
+                g.drawImage(preview, offsetX, offsetY, displayWidth, displayHeight, null);
+            }
+            return;
+        }
+        if (scaledPage != null) {
+            g.drawImage(scaledPage, offsetX, offsetY, null);
+            return;
+        }
+        if (pyramid == null) {
+            return;
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        clip.translate(-offsetX, -offsetY);
+        clip = clip.intersection(new Rectangle(0, 0, pageWidth, pageHeight));
+        if (clip.isEmpty()) {
+            return;
+        }
+
+        int firstColumn = clip.x / TILE_SIZE;
+        int lastColumn = (clip.x + clip.width - 1) / TILE_SIZE;
+        int firstRow = clip.y / TILE_SIZE;
+        int lastRow = (clip.y + clip.height - 1) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                BufferedImage tile = getTile(column, row);
+                g.drawImage(tile, offsetX + column * TILE_SIZE, offsetY + row * TILE_SIZE, null);
+            }
+        }
+    }
+
+    private BufferedImage getTile(int column, int row) {
+        Point key = new Point(column, row);
+        BufferedImage tile = tiles.get(key);
+        if (tile == null) {
+            tile = renderTile(column, row);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    // Scale only the part of the source that ends up in this tile
+    private BufferedImage renderTile(int column, int row) {
+        int x = column * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        int width = Math.min(TILE_SIZE, pageWidth - x);
+        int height = Math.min(TILE_SIZE, pageHeight - y);
+
+        BufferedImage source = pyramid.getLevel(pageWidth);
+        double scaleX = (double) source.getWidth() / pageWidth;
+        double scaleY = (double) source.getHeight() / pageHeight;
+
+        BufferedImage tile = new BufferedImage(width, height,
+                source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(source, 0, 0, width, height,
+                (int) (x * scaleX), (int) (y * scaleY),
+                (int) Math.ceil((x + width) * scaleX), (int) Math.ceil((y + height) * scaleY), null);
+        g2d.dispose();
+        return tile;
+    }
+}
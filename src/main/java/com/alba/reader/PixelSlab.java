@@ -0,0 +1,61 @@
+package com.alba.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Direct memory for off-heap pages. Memory is allocated in blocks up to a hard cap and handed out in chunks of a
+// fixed size, a page takes as many chunks as it needs. Released chunks are free for the next page right away, so
+// the direct memory in use never grows past the cap and never waits for the garbage collector to be given back.
+public class PixelSlab {
+
+    static final int CHUNK_BYTES = 256 * 1024;
+    private static final int CHUNKS_PER_BLOCK = 256; // 64 MB blocks
+
+    private final long maxChunks;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private long allocatedChunks;
+
+    public PixelSlab(long maxBytes) {
+        this.maxChunks = maxBytes / CHUNK_BYTES;
+    }
+
+    // Chunks that hold at least the given number of bytes, or null when the cap doesn't leave enough of them
+    public synchronized ByteBuffer[] allocate(long bytes) {
+        long count = (bytes + CHUNK_BYTES - 1) / CHUNK_BYTES;
+        if (count > free.size() + maxChunks - allocatedChunks) {
+            return null;
+        }
+        while (free.size() < count) {
+            int chunks = (int) Math.min(CHUNKS_PER_BLOCK, maxChunks - allocatedChunks);
+            ByteBuffer block = ByteBuffer.allocateDirect(chunks * CHUNK_BYTES);
+            for (int i = 0; i < chunks; i++) {
+                free.push(block.slice(i * CHUNK_BYTES, CHUNK_BYTES).order(ByteOrder.nativeOrder()));
+            }
+            allocatedChunks += chunks;
+        }
+
+        ByteBuffer[] result = new ByteBuffer[(int) count];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = free.pop();
+            result[i].clear();
+        }
+        return result;
+    }
+
+    public synchronized void release(ByteBuffer[] chunks) {
+        for (ByteBuffer chunk : chunks) {
+            free.push(chunk);
+        }
+    }
+
+    // Direct memory taken from the system, it stays with the slab until the slab is dropped
+    public synchronized long getAllocatedBytes() {
+        return allocatedChunks * CHUNK_BYTES;
+    }
+
+    public synchronized long getFreeBytes() {
+        return (long) free.size() * CHUNK_BYTES;
+    }
+}
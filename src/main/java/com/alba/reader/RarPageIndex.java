@@ -0,0 +1,337 @@
+package com.alba.reader;
+
+import com.github.junrar.Archive;
+import com.github.junrar.exception.RarException;
+import com.github.junrar.rarfile.FileHeader;
+import org.json.JSONObject;
+
+import javax.xml.stream.XMLStreamException;
+import java.awt.Dimension;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Index of the pages in a RAR file, built with a single walk over the headers.
+// Pages are decompressed in header order and spooled to a cache on disk, so a solid archive only has to be
+// decompressed up to a page once and every page that was already reached is a plain file read afterwards.
+// The size of a page is read from its header when it is spooled, once every size is known they are stored in the
+// library so the next open doesn't have to spool a page to know its size.
+public class RarPageIndex {
+
+    private static final String CACHE_PATH = "/Alba/ComicReader/RarCache";
+    private static final long MAX_CACHE_BYTES = 1024L * 1024 * 1024;
+    // Indexes by path, an index that is still being built is shared by everyone asking for it
+    private static final ConcurrentHashMap<String, CompletableFuture<RarPageIndex>> indexes = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final long lastModified;
+    private final List<String> imageNames = new ArrayList<>();
+    private final boolean solid;
+    private final File cacheDir;
+    private final String metadataName;
+    // Null until the metadata entry is read
+    private volatile JSONObject metadata;
+    // Null until the page is spooled
+    private final AtomicReferenceArray<Dimension> sizes;
+    private final AtomicInteger knownSizes = new AtomicInteger();
+
+    private RarPageIndex(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+
+        boolean solidArchive = false;
+        String metadataEntry = null;
+        long startTime = System.nanoTime();
+        try (Archive archive = new Archive(file)) {
+            FileHeader fileHeader = archive.nextFileHeader();
+            while (fileHeader != null) {
+                solidArchive |= fileHeader.isSolid();
+                // Only remember image files, in the order they are stored
+                if (!fileHeader.isDirectory() && fileHeader.getFileName().matches(".*\\.(jpg|jpeg|png|gif)$")) {
+                    imageNames.add(fileHeader.getFileName());
+                }
+
+                // The metadata is only read when it is needed, in a solid archive it can only be reached by
+                // extracting everything before it
+                if (!fileHeader.isDirectory() && fileHeader.getFileName().matches(".*\\.(xml)$")) {
+                    metadataEntry = fileHeader.getFileName();
+                }
+
+                fileHeader = archive.nextFileHeader();
+            }
+        } catch (RarException e) {
+            throw new IOException("Error reading RAR file", e);
+        }
+        this.solid = solidArchive;
+        String key = Integer.toHexString(file.getAbsolutePath().hashCode()) + "-" + file.length() + "-" + lastModified;
+        this.cacheDir = new File(LocalAppDataUtil.getDirectory(CACHE_PATH), key);
+        this.metadataName = metadataEntry;
+        this.sizes = new AtomicReferenceArray<>(imageNames.size());
+        if (metadataEntry == null) {
+            metadata = new JSONObject();
+        }
+        Metrics.time("rar.open", startTime);
+        Metrics.counter("rar.entries").add(imageNames.size());
+    }
+
+    // Only the file that is being indexed waits for its index, other files are indexed at the same time
+    public static RarPageIndex get(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        while (true) {
+            CompletableFuture<RarPageIndex> future = indexes.get(key);
+            if (future == null) {
+                CompletableFuture<RarPageIndex> created = new CompletableFuture<>();
+                future = indexes.putIfAbsent(key, created);
+                if (future == null) {
+                    try {
+                        RarPageIndex index = new RarPageIndex(file);
+                        created.complete(index);
+                        return index;
+                    } catch (IOException | RuntimeException e) {
+                        indexes.remove(key, created);
+                        created.completeExceptionally(e);
+                        throw e;
+                    }
+                }
+            }
+
+            RarPageIndex index;
+            try {
+                index = future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw e;
+            }
+            if (index.lastModified == file.lastModified()) {
+                return index;
+            }
+            // The file changed since it was indexed, build the index again
+            indexes.remove(key, future);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<String> getImageNames() {
+        return Collections.unmodifiableList(imageNames);
+    }
+
+    public int getPageCount() {
+        return imageNames.size();
+    }
+
+    public boolean isSolid() {
+        return solid;
+    }
+
+    // The metadata of the comic, read from the archive the first time. In a solid archive that decompresses
+    // everything stored before it, usually every page, so it shouldn't be asked for before the first page is shown
+    public JSONObject getMetadata() throws IOException {
+        if (metadata == null) {
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            extract(metadataName, xml);
+            readMetadata(xml.toByteArray());
+        }
+        return metadata;
+    }
+
+    // The metadata when it was already read, for example by a walk that passed it, otherwise null
+    public JSONObject getMetadataIfRead() {
+        return metadata;
+    }
+
+    private void readMetadata(byte[] xml) {
+        try {
+            metadata = ComicInfo.parse(new ByteArrayInputStream(xml)).toJSON();
+        } catch (XMLStreamException e) {
+            System.err.println("Error reading metadata entry: " + metadataName + " - " + e.getMessage());
+            metadata = new JSONObject();
+        }
+    }
+
+    public InputStream open(int page) throws IOException {
+        if (page < 0 || page >= imageNames.size()) {
+            throw new IndexOutOfBoundsException("Page index out of range.");
+        }
+        File spooled = spoolFile(page);
+        if (!spooled.exists()) {
+            extract(page);
+        }
+        return new BufferedInputStream(new FileInputStream(spooled));
+    }
+
+    // The size of a page, a page that wasn't spooled yet is spooled to read it
+    public Dimension getPageSize(int page) throws IOException {
+        Dimension size = sizes.get(page);
+        if (size == null) {
+            if (!spoolFile(page).exists()) {
+                extract(page);
+            }
+            recordSize(page);
+            size = sizes.get(page);
+        }
+        return size != null ? new Dimension(size) : null;
+    }
+
+    // The sizes of the pages spooled so far, the others are null
+    public Dimension[] getKnownPageSizes() {
+        Dimension[] known = new Dimension[sizes.length()];
+        for (int i = 0; i < known.length; i++) {
+            known[i] = sizes.get(i);
+        }
+        return known;
+    }
+
+    private void recordSize(int page) {
+        if (sizes.get(page) != null) {
+            return;
+        }
+        Dimension size;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(spoolFile(page)))) {
+            size = ImageTools.readDimensions(in);
+        } catch (IOException e) {
+            return; // Read again the next time it is asked for
+        }
+        // A page that isn't an image the reader knows has no size, the same as ComicPage gives it
+        if (sizes.compareAndSet(page, null, size != null ? size : new Dimension()) && knownSizes.incrementAndGet() == sizes.length()) {
+            try {
+                new ComicListManager().updatePageInfo(file.getName(), file, sizes.length(), getKnownPageSizes());
+            } catch (IOException e) {
+                System.err.println("Error storing page sizes: " + file.getName() + " - " + e.getMessage());
+            }
+        }
+    }
+
+    private File spoolFile(int page) {
+        return new File(cacheDir, page + ".page");
+    }
+
+    private synchronized void extract(int page) throws IOException {
+        File target = spoolFile(page);
+        if (target.exists()) {
+            return;
+        }
+        Files.createDirectories(cacheDir.toPath());
+        // Write to a temporary file first so a half written page is never read
+        File temp = new File(cacheDir, target.getName() + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(temp))) {
+            extract(imageNames.get(page), os);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordSize(page);
+        trimCache();
+    }
+
+    // Walk the archive up to an entry and extract it. A solid archive can only be decompressed in order, so every
+    // entry before it is extracted as well: pages that are not spooled yet are spooled, the metadata is read when it
+    // wasn't yet and everything else is discarded.
+    private synchronized void extract(String entryName, OutputStream target) throws IOException {
+        Map<String, Integer> pageNumbers = new HashMap<>();
+        for (int i = 0; i < imageNames.size(); i++) {
+            pageNumbers.putIfAbsent(imageNames.get(i), i);
+        }
+        if (solid) {
+            Files.createDirectories(cacheDir.toPath());
+        }
+
+        try (Archive archive = new Archive(file)) {
+            FileHeader fileHeader = archive.nextFileHeader();
+            while (fileHeader != null) {
+                if (!fileHeader.isDirectory()) {
+                    if (fileHeader.getFileName().equals(entryName)) {
+                        archive.extractFile(fileHeader, target);
+                        return;
+                    }
+                    if (solid) {
+                        Integer number = pageNumbers.get(fileHeader.getFileName());
+                        if (number != null && !spoolFile(number).exists()) {
+                            spool(archive, fileHeader, spoolFile(number));
+                            recordSize(number);
+                        } else if (metadata == null && fileHeader.getFileName().equals(metadataName)) {
+                            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+                            archive.extractFile(fileHeader, xml);
+                            readMetadata(xml.toByteArray());
+                        } else {
+                            archive.extractFile(fileHeader, OutputStream.nullOutputStream());
+                        }
+                    }
+                }
+                fileHeader = archive.nextFileHeader();
+            }
+        } catch (RarException e) {
+            throw new IOException("Error reading RAR file", e);
+        }
+        throw new FileNotFoundException("Entry not found: " + entryName);
+    }
+
+    private void spool(Archive archive, FileHeader fileHeader, File target) throws IOException {
+        // Write to a temporary file first so a half written page is never read
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(temp))) {
+            archive.extractFile(fileHeader, os);
+        } catch (RarException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw new IOException("Error reading entry: " + fileHeader.getFileName(), e);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Keep the cache under its budget by removing the comics that were spooled the longest ago
+    private void trimCache() {
+        cacheDir.setLastModified(System.currentTimeMillis());
+        File[] comics = cacheDir.getParentFile().listFiles(File::isDirectory);
+        if (comics == null) {
+            return;
+        }
+        Arrays.sort(comics, Comparator.comparingLong(File::lastModified));
+
+        long total = 0;
+        for (File comic : comics) {
+            total += directorySize(comic);
+        }
+        for (File comic : comics) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            if (comic.equals(cacheDir)) {
+                continue;
+            }
+            total -= directorySize(comic);
+            File[] files = comic.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+            comic.delete();
+        }
+    }
+
+    private static long directorySize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += f.length();
+            }
+        }
+        return size;
+    }
+}
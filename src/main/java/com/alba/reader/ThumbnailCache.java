@@ -0,0 +1,102 @@
+package com.alba.reader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Small pre-scaled thumbnails stored under the app data directory. A thumbnail is keyed by the path, size
+// and last modified time of the comic and the thumbnail size, so a changed comic gets a new thumbnail.
+public class ThumbnailCache {
+
+    private static final String CACHE_PATH = "/Alba/ComicReader/Thumbnails";
+
+    private ThumbnailCache() {
+    }
+
+    public static BufferedImage getThumbnail(File comicFile, int width, int height) throws IOException {
+        File cacheDir = LocalAppDataUtil.getDirectory(CACHE_PATH);
+        String prefix = Integer.toHexString(comicFile.getAbsolutePath().hashCode()) + "-";
+        String version = prefix + comicFile.length() + "-" + comicFile.lastModified() + "-";
+        File thumbnailFile = new File(cacheDir, version + width + "x" + height + ".jpg");
+
+        if (thumbnailFile.exists()) {
+            BufferedImage thumbnail = ImageIO.read(thumbnailFile);
+            if (thumbnail != null) {
+                Metrics.counter("thumbnail.hits").increment();
+                return thumbnail;
+            }
+        }
+
+        Metrics.counter("thumbnail.misses").increment();
+        long startTime = System.nanoTime();
+        BufferedImage thumbnail = createThumbnail(comicFile, width, height);
+        Metrics.time("thumbnail.create", startTime);
+        if (thumbnail == null) {
+            return null;
+        }
+
+        // Write to a temporary file next to the thumbnail and move it in place, so a thumbnail that is read
+        // meanwhile is never half written
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(cacheDir.toPath(), "thumbnail", ".tmp");
+            if (!ImageIO.write(thumbnail, "jpg", temp.toFile())) {
+                throw new IOException("No JPEG writer");
+            }
+            Files.move(temp, thumbnailFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing thumbnail: " + thumbnailFile.getName() + " - " + e.getMessage());
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+            return thumbnail;
+        }
+
+        // Only now remove the thumbnails of older versions of this comic, thumbnails of this version in other
+        // sizes are kept
+        File[] oldThumbnails = cacheDir.listFiles((dir, name) -> name.startsWith(prefix) && !name.startsWith(version));
+        if (oldThumbnails != null) {
+            for (File oldThumbnail : oldThumbnails) {
+                oldThumbnail.delete();
+            }
+        }
+        return thumbnail;
+    }
+
+    // Decode the first page at about the thumbnail size and scale it to the exact size
+    private static BufferedImage createThumbnail(File comicFile, int width, int height) throws IOException {
+        BufferedImage image = null;
+        ComicFormat format = FileTypeDetector.detect(comicFile);
+        if (format == ComicFormat.CBZ || format == ComicFormat.NHL) {
+            try (ArchiveSession session = ArchiveSessionPool.acquire(comicFile)) {
+                // An archive without images has no thumbnail
+                if (!session.getImageEntries().isEmpty()) {
+                    try (InputStream is = session.open(session.getImageEntries().getFirst())) {
+                        image = ImageTools.readImage(is, width, height);
+                    }
+                }
+            }
+        } else if (format == ComicFormat.CBR) {
+            image = ComicBookRar.extractFirstImage(comicFile, width, height);
+        }
+        if (image == null) {
+            return null;
+        }
+        // JPEG has no alpha channel, scaleImage gives an RGB image for pages without one
+        BufferedImage thumbnail = ImageTools.scaleImage(image, width, height);
+        if (thumbnail.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = rgb.createGraphics();
+            g2d.drawImage(thumbnail, 0, 0, null);
+            g2d.dispose();
+            thumbnail = rgb;
+        }
+        return thumbnail;
+    }
+}